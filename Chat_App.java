@@ -1,25 +1,26 @@
 import java.io.*;
 import java.net.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.security.*;
-import java.security.spec.InvalidKeySpecException;
 import java.security.spec.X509EncodedKeySpec;
+import java.util.Arrays;
 import java.util.Base64;
 import javax.crypto.*;
-import javax.crypto.spec.PBEKeySpec;
+import javax.crypto.spec.GCMParameterSpec;
 import javax.crypto.spec.SecretKeySpec;
 import java.util.Scanner;
-import java.util.logging.Level;
-import java.util.logging.Logger;
 
 public class SecureChatApp {
 
     private static final String SERVER_ADDRESS = "127.0.0.1"; // Localhost for testing
     private static final int SERVER_PORT = 12345;
-    private static final String ALGORITHM = "AES";
-    private static final String HASH_ALGORITHM = "SHA-256";
-    private static SecretKey secretKey;
     private static PublicKey publicKey;
     private static PrivateKey privateKey;
+    private static final String TRUSTED_KEYS_FILE = "trusted.keys";
 
     public static void main(String[] args) {
         try {
@@ -33,7 +34,7 @@ public class SecureChatApp {
             scanner.nextLine(); // Consume newline
 
             if (choice == 1) {
-                startServer();
+                startServer(scanner);
             } else if (choice == 2) {
                 startClient(scanner);
             } else {
@@ -46,83 +47,50 @@ public class SecureChatApp {
         }
     }
 
-    //method to generate rsa key pair
-    private static void generateKeyPair() throws NoSuchAlgorithmException, InvalidKeySpecException {
-        //check if the key pair exists
-        File publicKeyFile = new File("public.key");
-        File privateKeyFile = new File("private.key");
+    //method to load the rsa identity key pair, generating and saving one on first use
+    private static void generateKeyPair() throws IOException, GeneralSecurityException {
+        KeyPair keyPair = SecureChannel.loadIdentity(new File("public.key"), new File("private.key"));
+        publicKey = keyPair.getPublic();
+        privateKey = keyPair.getPrivate();
+        // Compare this with what the peer is shown before trusting each other
+        System.out.println("Identity key fingerprint: " + SecureChannel.fingerprint(publicKey));
+    }
 
-        if (publicKeyFile.exists() && privateKeyFile.exists()) {
-            // Load the keys
-            try (ObjectInputStream pubKeyIn = new ObjectInputStream(new FileInputStream(publicKeyFile));
-                 ObjectInputStream privKeyIn = new ObjectInputStream(new FileInputStream(privateKeyFile))) {
-                publicKey = (PublicKey) pubKeyIn.readObject();
-                privateKey = (PrivateKey) privKeyIn.readObject();
-                System.out.println("Key pair loaded from files.");
-            } catch (IOException | ClassNotFoundException e) {
-                System.out.println("Error loading keys, generating new pair.");
-                 // Generate a new key pair
-                KeyPairGenerator keyPairGenerator = KeyPairGenerator.getInstance("RSA");
-                keyPairGenerator.initialize(2048); // Use a strong key size
-                KeyPair keyPair = keyPairGenerator.generateKeyPair();
-                publicKey = keyPair.getPublic();
-                privateKey = keyPair.getPrivate();
-                //save the key pair
-                 try (ObjectOutputStream pubKeyOut = new ObjectOutputStream(new FileOutputStream(publicKeyFile));
-                      ObjectOutputStream privKeyOut = new ObjectOutputStream(new FileOutputStream(privateKeyFile))) {
-                    pubKeyOut.writeObject(publicKey);
-                    privKeyOut.writeObject(privateKey);
-                }catch(IOException ex){
-                    System.err.println("Error saving keys: " + ex.getMessage());
-                }
+    // Trusts peers listed in trusted.keys and asks about any other, the way ssh asks about an unknown host
+    private static SecureChannel.PeerTrust confirmUnknownPeers(Scanner scanner) {
+        TrustedKeys trustedKeys = new TrustedKeys(Paths.get(TRUSTED_KEYS_FILE));
+        return identity -> {
+            if (trustedKeys.trusts(identity)) {
+                return true;
             }
-
-        } else {
-             // Generate a new key pair
-            KeyPairGenerator keyPairGenerator = KeyPairGenerator.getInstance("RSA");
-            keyPairGenerator.initialize(2048); // Use a strong key size
-            KeyPair keyPair = keyPairGenerator.generateKeyPair();
-            publicKey = keyPair.getPublic();
-            privateKey = keyPair.getPrivate();
-            //save the key pair
-             try (ObjectOutputStream pubKeyOut = new ObjectOutputStream(new FileOutputStream(publicKeyFile));
-                      ObjectOutputStream privKeyOut = new ObjectOutputStream(new FileOutputStream(privateKeyFile))) {
-                    pubKeyOut.writeObject(publicKey);
-                    privKeyOut.writeObject(privateKey);
-                }catch(IOException ex){
-                    System.err.println("Error saving keys: " + ex.getMessage());
-                }
-            System.out.println("New key pair generated.");
-        }
+            System.out.println("Peer identity " + SecureChannel.fingerprint(identity) + " is not in " + TRUSTED_KEYS_FILE + ".");
+            System.out.println("Trust it? (yes/no)");
+            if (!scanner.nextLine().trim().equalsIgnoreCase("yes")) {
+                return false;
+            }
+            trustedKeys.add(identity, "chat peer");
+            return true;
+        };
     }
 
     // Method to start the server
-    private static void startServer() {
+    private static void startServer(Scanner scanner) {
         try (ServerSocket serverSocket = new ServerSocket(SERVER_PORT)) {
             System.out.println("Server started. Listening on port " + SERVER_PORT);
 
             Socket clientSocket = serverSocket.accept();
             System.out.println("Client connected: " + clientSocket.getInetAddress());
 
-            // Send public key to the client
-            sendPublicKey(clientSocket);
-
-            // Receive client's public key and generate shared secret
-            PublicKey clientPublicKey = receivePublicKey(clientSocket);
-            generateSharedSecret(clientPublicKey);
-
-            // Set up secure communication channels
-            BufferedReader in = new BufferedReader(new InputStreamReader(clientSocket.getInputStream()));
-            PrintWriter out = new PrintWriter(clientSocket.getOutputStream(), true);
+            // Establish the encrypted session
+            SecureChannel channel = SecureChannel.open(clientSocket, new KeyPair(publicKey, privateKey), confirmUnknownPeers(scanner));
+            System.out.println("Shared secret generated.");
 
             // Exchange messages
             String message;
-            while ((message = in.readLine()) != null) {
-                System.out.println("Received: " + decrypt(message));
+            while ((message = channel.receive()) != null) {
+                System.out.println("Received: " + message);
                 System.out.print("Server: ");
-                String serverResponse = new Scanner(System.in).nextLine();
-                out.println(encrypt(serverResponse));
-                out.flush();
+                channel.send(scanner.nextLine());
             }
 
             System.out.println("Client disconnected.");
@@ -136,93 +104,287 @@ public class SecureChatApp {
         try (Socket socket = new Socket(SERVER_ADDRESS, SERVER_PORT)) {
             System.out.println("Connected to server: " + SERVER_ADDRESS + ":" + SERVER_PORT);
 
-            // Receive server's public key
-            PublicKey serverPublicKey = receivePublicKey(socket);
-            // Send public key to the server
-            sendPublicKey(socket);
-            // Generate shared secret
-            generateSharedSecret(serverPublicKey);
-
-            // Set up secure communication channels
-            PrintWriter out = new PrintWriter(socket.getOutputStream(), true);
-            BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+            // Establish the encrypted session
+            SecureChannel channel = SecureChannel.open(socket, new KeyPair(publicKey, privateKey), confirmUnknownPeers(scanner));
+            System.out.println("Shared secret generated.");
 
             // Exchange messages
             String message;
             while (true) {
                 System.out.print("Client: ");
                 message = scanner.nextLine();
-                out.println(encrypt(message));
-                out.flush();
+                channel.send(message);
 
-                String serverResponse = in.readLine();
+                String serverResponse = channel.receive();
                 if (serverResponse == null) {
                     System.out.println("Server disconnected.");
                     break;
                 }
-                System.out.println("Received: " + decrypt(serverResponse));
+                System.out.println("Received: " + serverResponse);
             }
         } catch (Exception e) {
             System.err.println("Client Error: " + e.getMessage());
         }
     }
+}
+
+// An encrypted, line-oriented session over a socket; the transport behind SecureChatApp and NoteSync.
+// Each end sends an ephemeral X25519 public key with its long-term RSA identity key, then signs both
+// ephemeral keys with the identity, so a man in the middle cannot substitute keys of its own; the peer's
+// identity must also be trusted by the caller. The AES key is the SHA-256 digest of the shared secret,
+// and every message travels as one line of Base64(IV + AES-GCM ciphertext). The associated data binds a
+// direction and a sequence number, so reflected, replayed or reordered lines fail authentication.
+class SecureChannel implements Closeable {
+
+    // Decides whether a peer whose signature checked out may connect
+    interface PeerTrust {
+        boolean trusts(PublicKey identity) throws IOException;
+    }
+
+    private static final String KEY_AGREEMENT = "X25519";
+    private static final String IDENTITY_ALGORITHM = "RSA";
+    private static final int IDENTITY_KEY_SIZE = 2048;
+    private static final String SIGNATURE = "SHA256withRSA";
+    private static final byte[] TRANSCRIPT_LABEL = "SecureChannel handshake v2\0".getBytes(StandardCharsets.US_ASCII);
+    private static final int MAX_HANDSHAKE_LINE = 4096; // Bounds what an unauthenticated peer can make us buffer
+    private static final String HASH_ALGORITHM = "SHA-256";
+    private static final String CIPHER = "AES/GCM/NoPadding";
+    private static final int IV_LENGTH = 12;
+    private static final int TAG_BITS = 128;
+
+    private final Socket socket;
+    private final BufferedReader in;
+    private final BufferedWriter out;
+    private final SecretKey key;
+    private final byte outboundDirection;
+    private final byte inboundDirection;
+    private final SecureRandom random = new SecureRandom();
+    private long sent;
+    private long received;
+
+    private SecureChannel(Socket socket, BufferedReader in, BufferedWriter out, SecretKey key, boolean lowSide) {
+        this.socket = socket;
+        this.in = in;
+        this.out = out;
+        this.key = key;
+        this.outboundDirection = (byte) (lowSide ? 1 : 2);
+        this.inboundDirection = (byte) (lowSide ? 2 : 1);
+    }
+
+    // Performs the handshake; both ends call this, in either order
+    static SecureChannel open(Socket socket, KeyPair identity, PeerTrust trust) throws IOException, GeneralSecurityException {
+        BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), "UTF-8"));
+        BufferedWriter out = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), "UTF-8"));
+        Base64.Encoder encoder = Base64.getEncoder();
+        Base64.Decoder decoder = Base64.getDecoder();
+
+        KeyPair keyPair = KeyPairGenerator.getInstance(KEY_AGREEMENT).generateKeyPair();
+        byte[] ownKey = keyPair.getPublic().getEncoded();
+        writeLine(out, encoder.encodeToString(ownKey) + " " + encoder.encodeToString(identity.getPublic().getEncoded()));
+
+        byte[] peerKey;
+        PublicKey peerPublicKey;
+        PublicKey peerIdentity;
+        try {
+            String[] hello = readHandshakeLine(in).split(" ");
+            if (hello.length != 2) {
+                throw new GeneralSecurityException("Malformed handshake from peer");
+            }
+            peerKey = decoder.decode(hello[0]);
+            peerPublicKey = KeyFactory.getInstance(KEY_AGREEMENT).generatePublic(new X509EncodedKeySpec(peerKey));
+            peerIdentity = KeyFactory.getInstance(IDENTITY_ALGORITHM).generatePublic(new X509EncodedKeySpec(decoder.decode(hello[1])));
+        } catch (IllegalArgumentException e) {
+            throw new GeneralSecurityException("Malformed handshake from peer", e);
+        }
+        if (Arrays.equals(ownKey, peerKey)) {
+            throw new GeneralSecurityException("Peer echoed our public key");
+        }
+
+        // Each end signs its own ephemeral key followed by the peer's, which ties the signature to this session
+        Signature signer = Signature.getInstance(SIGNATURE);
+        signer.initSign(identity.getPrivate());
+        signer.update(transcript(ownKey, peerKey));
+        writeLine(out, encoder.encodeToString(signer.sign()));
 
-    private static void sendPublicKey(Socket socket) throws IOException {
-        try (ObjectOutputStream oos = new ObjectOutputStream(socket.getOutputStream())) {
-            oos.writeObject(publicKey);
+        Signature verifier = Signature.getInstance(SIGNATURE);
+        verifier.initVerify(peerIdentity);
+        verifier.update(transcript(peerKey, ownKey));
+        boolean verified;
+        try {
+            verified = verifier.verify(decoder.decode(readHandshakeLine(in)));
+        } catch (IllegalArgumentException e) {
+            throw new GeneralSecurityException("Malformed handshake from peer", e);
+        }
+        if (!verified) {
+            throw new GeneralSecurityException("Peer signature does not match its identity key");
         }
+        if (!trust.trusts(peerIdentity)) {
+            throw new GeneralSecurityException("Peer identity " + fingerprint(peerIdentity) + " is not trusted");
+        }
+
+        KeyAgreement keyAgreement = KeyAgreement.getInstance(KEY_AGREEMENT);
+        keyAgreement.init(keyPair.getPrivate());
+        keyAgreement.doPhase(peerPublicKey, true);
+        byte[] keyBytes = MessageDigest.getInstance(HASH_ALGORITHM).digest(keyAgreement.generateSecret());
+        // The end with the smaller public key sends in direction 1, the other in direction 2
+        boolean lowSide = Arrays.compare(ownKey, peerKey) < 0;
+        return new SecureChannel(socket, in, out, new SecretKeySpec(keyBytes, "AES"), lowSide);
     }
 
-    private static PublicKey receivePublicKey(Socket socket) throws IOException, ClassNotFoundException {
-        try (ObjectInputStream ois = new ObjectInputStream(socket.getInputStream())) {
-            return (PublicKey) ois.readObject();
+    // Loads the RSA identity saved by an earlier run, or generates and saves one. Fails rather than run with
+    // an identity that would change on the next start, since peers pin it.
+    static KeyPair loadIdentity(File publicKeyFile, File privateKeyFile) throws IOException, GeneralSecurityException {
+        if (publicKeyFile.exists() && privateKeyFile.exists()) {
+            try (ObjectInputStream pubKeyIn = new ObjectInputStream(new FileInputStream(publicKeyFile));
+                 ObjectInputStream privKeyIn = new ObjectInputStream(new FileInputStream(privateKeyFile))) {
+                return new KeyPair((PublicKey) pubKeyIn.readObject(), (PrivateKey) privKeyIn.readObject());
+            } catch (ClassNotFoundException | ClassCastException e) {
+                throw new IOException("Identity key files are not readable: " + e.getMessage(), e);
+            }
+        }
+        KeyPairGenerator keyPairGenerator = KeyPairGenerator.getInstance(IDENTITY_ALGORITHM);
+        keyPairGenerator.initialize(IDENTITY_KEY_SIZE);
+        KeyPair keyPair = keyPairGenerator.generateKeyPair();
+        try (ObjectOutputStream pubKeyOut = new ObjectOutputStream(new FileOutputStream(publicKeyFile));
+             ObjectOutputStream privKeyOut = new ObjectOutputStream(new FileOutputStream(privateKeyFile))) {
+            // Owner-only before the key is written, where the file system supports it
+            privateKeyFile.setReadable(false, false);
+            privateKeyFile.setReadable(true, true);
+            pubKeyOut.writeObject(keyPair.getPublic());
+            privKeyOut.writeObject(keyPair.getPrivate());
         }
+        return keyPair;
     }
 
-    private static void generateSharedSecret(PublicKey otherPublicKey) throws NoSuchAlgorithmException, InvalidKeySpecException {
+    // A short form of a key for people to compare, in the style ssh uses
+    static String fingerprint(PublicKey key) {
         try {
-            // Use Diffie-Hellman to establish a shared secret
-            KeyAgreement keyAgreement = KeyAgreement.getInstance("DH");
-            keyAgreement.init(privateKey);
-            keyAgreement.doPhase(otherPublicKey, true);
-            byte[] sharedSecretBytes = keyAgreement.generateSecret();
+            byte[] digest = MessageDigest.getInstance(HASH_ALGORITHM).digest(key.getEncoded());
+            return "SHA256:" + Base64.getEncoder().withoutPadding().encodeToString(digest);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is required by every Java platform", e);
+        }
+    }
 
-            // Derive an AES key from the shared secret using a key derivation function (KDF)
-            MessageDigest sha256 = MessageDigest.getInstance(HASH_ALGORITHM);
-            byte[] keyBytes = sha256.digest(sharedSecretBytes);
-            secretKey = new SecretKeySpec(keyBytes, ALGORITHM);
+    private static byte[] transcript(byte[] signerKey, byte[] otherKey) {
+        byte[] data = new byte[TRANSCRIPT_LABEL.length + signerKey.length + otherKey.length];
+        System.arraycopy(TRANSCRIPT_LABEL, 0, data, 0, TRANSCRIPT_LABEL.length);
+        System.arraycopy(signerKey, 0, data, TRANSCRIPT_LABEL.length, signerKey.length);
+        System.arraycopy(otherKey, 0, data, TRANSCRIPT_LABEL.length + signerKey.length, otherKey.length);
+        return data;
+    }
 
-            System.out.println("Shared secret generated.");
-        } catch (InvalidKeyException e) {
-            throw new RuntimeException("Error initializing KeyAgreement: " + e.getMessage(), e);
+    private static void writeLine(BufferedWriter out, String line) throws IOException {
+        out.write(line);
+        out.newLine();
+        out.flush();
+    }
+
+    private static String readHandshakeLine(BufferedReader in) throws IOException {
+        StringBuilder sb = new StringBuilder();
+        int c;
+        while ((c = in.read()) != '\n') {
+            if (c < 0) {
+                throw new EOFException("Peer closed the connection during key exchange");
+            }
+            if (sb.length() == MAX_HANDSHAKE_LINE) {
+                throw new IOException("Handshake line from peer is too long");
+            }
+            if (c != '\r') {
+                sb.append((char) c);
+            }
         }
+        return sb.toString();
     }
 
-    // Method to encrypt a message using AES
-    private static String encrypt(String message) {
+    public synchronized void send(String message) throws IOException {
         try {
-            Cipher cipher = Cipher.getInstance(ALGORITHM);
-            cipher.init(Cipher.ENCRYPT_MODE, secretKey);
-            byte[] encryptedBytes = cipher.doFinal(message.getBytes("UTF-8"));
-            return Base64.getEncoder().encodeToString(encryptedBytes);
-        } catch (Exception e) {
-            System.err.println("Encryption Error: " + e.getMessage());
-            return null; // Handle error appropriately
+            byte[] iv = new byte[IV_LENGTH];
+            random.nextBytes(iv);
+            Cipher cipher = Cipher.getInstance(CIPHER);
+            cipher.init(Cipher.ENCRYPT_MODE, key, new GCMParameterSpec(TAG_BITS, iv));
+            cipher.updateAAD(associatedData(outboundDirection, sent++));
+            byte[] encrypted = cipher.doFinal(message.getBytes("UTF-8"));
+            byte[] frame = new byte[IV_LENGTH + encrypted.length];
+            System.arraycopy(iv, 0, frame, 0, IV_LENGTH);
+            System.arraycopy(encrypted, 0, frame, IV_LENGTH, encrypted.length);
+            out.write(Base64.getEncoder().encodeToString(frame));
+            out.newLine();
+            out.flush();
+        } catch (GeneralSecurityException e) {
+            throw new IOException("Encryption Error: " + e.getMessage(), e);
         }
     }
 
-    // Method to decrypt a message using AES
-    private static String decrypt(String encryptedMessage) {
+    // Returns the next message, or null once the peer has closed the connection
+    public String receive() throws IOException {
+        String line = in.readLine();
+        if (line == null) {
+            return null;
+        }
         try {
-            Cipher cipher = Cipher.getInstance(ALGORITHM);
-            cipher.init(Cipher.DECRYPT_MODE, secretKey);
-            byte[] decodedBytes = Base64.getDecoder().decode(encryptedMessage);
-            byte[] decryptedBytes = cipher.doFinal(decodedBytes);
-            return new String(decryptedBytes, "UTF-8");
-        } catch (Exception e) {
-            System.err.println("Decryption Error: " + e.getMessage());
-            return null; // Handle error appropriately
+            byte[] frame = Base64.getDecoder().decode(line);
+            if (frame.length < IV_LENGTH) {
+                throw new IOException("Decryption Error: message too short");
+            }
+            Cipher cipher = Cipher.getInstance(CIPHER);
+            cipher.init(Cipher.DECRYPT_MODE, key, new GCMParameterSpec(TAG_BITS, frame, 0, IV_LENGTH));
+            cipher.updateAAD(associatedData(inboundDirection, received++));
+            byte[] decrypted = cipher.doFinal(frame, IV_LENGTH, frame.length - IV_LENGTH);
+            return new String(decrypted, "UTF-8");
+        } catch (GeneralSecurityException | IllegalArgumentException e) {
+            throw new IOException("Decryption Error: " + e.getMessage(), e);
         }
     }
+
+    private static byte[] associatedData(byte direction, long sequence) {
+        byte[] data = new byte[9];
+        data[0] = direction;
+        for (int i = 0; i < 8; i++) {
+            data[8 - i] = (byte) (sequence >>> (8 * i));
+        }
+        return data;
+    }
+
+    @Override
+    public void close() throws IOException {
+        socket.close();
+    }
 }
 
+// Identity keys of the peers this instance accepts, one per line as Base64 X.509 followed by an optional
+// comment, like ssh's authorized_keys. Blank lines and lines starting with # are ignored. The file is read
+// on every check, so a key added while a server runs takes effect on its next connection.
+class TrustedKeys implements SecureChannel.PeerTrust {
+
+    private final Path file;
+
+    public TrustedKeys(Path file) {
+        this.file = file;
+    }
+
+    @Override
+    public synchronized boolean trusts(PublicKey identity) throws IOException {
+        if (!Files.exists(file)) {
+            return false;
+        }
+        String encoded = encode(identity);
+        for (String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+            String trimmed = line.trim();
+            if (!trimmed.isEmpty() && !trimmed.startsWith("#") && trimmed.split("\\s+", 2)[0].equals(encoded)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public synchronized void add(PublicKey identity, String comment) throws IOException {
+        Files.write(file, (encode(identity) + " " + comment + System.lineSeparator()).getBytes(StandardCharsets.UTF_8),
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+    }
+
+    // The line that trusts a key, for the peer's trusted keys file
+    static String encode(PublicKey identity) {
+        return Base64.getEncoder().encodeToString(identity.getEncoded());
+    }
+}
@@ -0,0 +1,322 @@
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.IntFunction;
+import java.util.stream.Stream;
+import javax.swing.JTextPane;
+
+// Benchmarks for NoteManager and NoteStore over deterministic synthetic corpora.
+// Each benchmark runs warmup iterations, then measured iterations of a fixed duration, and reports
+// throughput (ops/s with its spread across iterations) and bytes allocated per operation across all threads,
+// the same figures JMH gives as thrpt and gc.alloc.rate.norm.
+// The scanner.* benchmarks check how ParallelNoteScanner scales: one sequential scan, then the same scan on
+// fork-join pools of 1, 2, 4, ... threads up to the core count, each with its speedup over the sequential scan.
+// Usage: java NoteBenchmark [sizes=10000,100000] [filter=substring] [seconds=1] [threads=<max pool size>]
+class NoteBenchmark {
+
+    private static final int WARMUP_ITERATIONS = 3;
+    private static final int MEASURED_ITERATIONS = 5;
+    private static final long SEED = 20240601L;
+    private static final int SEARCH_CHUNK = 8; // Results per published chunk in the search rendering benchmarks
+
+    private static volatile int sink; // Consumes results so the JIT cannot drop the work
+
+    // Generates the same notes for the same size and seed. Tags, categories and words follow Zipf
+    // distributions, so a few are very common and most are rare, as in real collections.
+    static final class SyntheticCorpus {
+        static final int TAG_POOL = 2_000;
+        static final int CATEGORY_POOL = 24;
+        static final int VOCABULARY = 20_000;
+        private static final long THREE_YEARS_MILLIS = 3L * 365 * 24 * 60 * 60 * 1000;
+
+        private final String[] tags = names("tag", TAG_POOL);
+        private final String[] categories = names("category", CATEGORY_POOL);
+        private final String[] words = names("w", VOCABULARY);
+        private final ZipfSampler tagSampler = new ZipfSampler(TAG_POOL, 1.1);
+        private final ZipfSampler categorySampler = new ZipfSampler(CATEGORY_POOL, 1.3);
+        private final ZipfSampler wordSampler = new ZipfSampler(VOCABULARY, 1.0);
+
+        List<Note> generate(int count, long seed) {
+            Random random = new Random(seed);
+            long start = 1_600_000_000_000L;
+            List<Note> notes = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                String id = new UUID(random.nextLong(), random.nextLong()).toString();
+                Note note = new Note(id, sentence(random, 3 + random.nextInt(6)), body(random),
+                        categories[categorySampler.sample(random)], tags(random),
+                        start + (long) (random.nextDouble() * THREE_YEARS_MILLIS), 0L);
+                notes.add(note);
+            }
+            return notes;
+        }
+
+        String word(Random random) {
+            return words[wordSampler.sample(random)];
+        }
+
+        String tag(int rank) {
+            return tags[rank];
+        }
+
+        String category(int rank) {
+            return categories[rank];
+        }
+
+        // Mostly short notes with a long tail: about 60 to 6000 words, log-normally distributed
+        private String body(Random random) {
+            int words = (int) Math.min(6000, Math.max(10, Math.exp(5 + random.nextGaussian())));
+            StringBuilder sb = new StringBuilder(words * 8);
+            for (int w = 0; w < words; w++) {
+                sb.append(word(random)).append(w % 12 == 11 ? '\n' : ' ');
+            }
+            return sb.toString();
+        }
+
+        private String sentence(Random random, int length) {
+            StringBuilder sb = new StringBuilder();
+            for (int w = 0; w < length; w++) {
+                sb.append(w == 0 ? "" : " ").append(word(random));
+            }
+            return sb.toString();
+        }
+
+        // 0 to 6 tags, geometrically distributed so most notes carry one or two
+        private List<String> tags(Random random) {
+            List<String> result = new ArrayList<>();
+            while (result.size() < 6 && random.nextDouble() < 0.6) {
+                String tag = tags[tagSampler.sample(random)];
+                if (!result.contains(tag)) {
+                    result.add(tag);
+                }
+            }
+            return result;
+        }
+
+        private static String[] names(String prefix, int count) {
+            String[] names = new String[count];
+            for (int i = 0; i < count; i++) {
+                names[i] = prefix + i;
+            }
+            return names;
+        }
+    }
+
+    // Samples ranks 0..n-1 with probability proportional to 1 / (rank + 1)^exponent
+    static final class ZipfSampler {
+        private final double[] cumulative;
+
+        ZipfSampler(int n, double exponent) {
+            cumulative = new double[n];
+            double sum = 0;
+            for (int i = 0; i < n; i++) {
+                sum += 1.0 / Math.pow(i + 1, exponent);
+                cumulative[i] = sum;
+            }
+            for (int i = 0; i < n; i++) {
+                cumulative[i] /= sum;
+            }
+        }
+
+        int sample(Random random) {
+            int index = Arrays.binarySearch(cumulative, random.nextDouble());
+            return Math.min(index >= 0 ? index : -index - 1, cumulative.length - 1);
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        System.setProperty("java.awt.headless", "true");
+        int[] sizes = {10_000, 100_000};
+        String filter = "";
+        long iterationMillis = 1000;
+        int maxThreads = Runtime.getRuntime().availableProcessors();
+        for (String arg : args) {
+            if (arg.startsWith("sizes=")) {
+                sizes = Arrays.stream(arg.substring(6).split(",")).mapToInt(Integer::parseInt).toArray();
+            } else if (arg.startsWith("filter=")) {
+                filter = arg.substring(7);
+            } else if (arg.startsWith("seconds=")) {
+                iterationMillis = (long) (Double.parseDouble(arg.substring(8)) * 1000);
+            } else if (arg.startsWith("threads=")) {
+                maxThreads = Integer.parseInt(arg.substring(8));
+            }
+        }
+
+        System.out.printf("%-28s %9s %14s %12s %16s%n", "Benchmark", "Notes", "ops/s", "stddev", "alloc B/op");
+        SyntheticCorpus corpus = new SyntheticCorpus();
+        for (int size : sizes) {
+            new NoteBenchmark(corpus, size, filter, iterationMillis, maxThreads).runAll();
+        }
+    }
+
+    private final SyntheticCorpus corpus;
+    private final int size;
+    private final String filter;
+    private final long iterationMillis;
+    private final int maxThreads;
+
+    private NoteBenchmark(SyntheticCorpus corpus, int size, String filter, long iterationMillis, int maxThreads) {
+        this.corpus = corpus;
+        this.size = size;
+        this.filter = filter;
+        this.iterationMillis = iterationMillis;
+        this.maxThreads = maxThreads;
+    }
+
+    private void runAll() throws IOException, ClassNotFoundException {
+        Path directory = Files.createTempDirectory("note-benchmark");
+        Path dataFile = directory.resolve("notes.dat");
+        try {
+            List<Note> notes = corpus.generate(size, SEED);
+            NoteStore store = new NoteStore(dataFile);
+            store.putAll(notes);
+            store.save();
+            NoteManager manager = new NoteManager(store);
+
+            Random random = new Random(SEED);
+            String[] queries = new String[64];
+            for (int i = 0; i < queries.length; i++) {
+                queries[i] = corpus.word(random);
+            }
+
+            run("searchNotes.contains", i -> manager.searchNotes(queries[i % queries.length]).size());
+            run("searchNotes.regex", i -> manager.searchNotes(
+                    NoteMatcher.regex("\\b" + queries[i % queries.length] + "\\s+w1\\b", 0), 100).size());
+            run("searchNotes.fuzzy", i -> manager.searchNotes(
+                    NoteMatcher.fuzzy(queries[i % queries.length] + "x", 1), 100).size());
+            runScaling(notes, NoteMatcher.regex("\\b" + queries[0] + "\\s+w1\\b", 0));
+            run("tagLookup", i -> {
+                String tag = corpus.tag(i % 50);
+                int found = 0;
+                for (Note note : store.snapshot().getNotes()) {
+                    found += note.hasTag(tag) ? 1 : 0;
+                }
+                return found;
+            });
+            run("categoryLookup", i -> {
+                String category = corpus.category(i % SyntheticCorpus.CATEGORY_POOL);
+                int found = 0;
+                for (Note note : store.snapshot().getNotes()) {
+                    found += category.equalsIgnoreCase(note.getCategory()) ? 1 : 0;
+                }
+                return found;
+            });
+            // Cycles through more notes than the render cache holds, so every call renders
+            manager.clearHtmlCache();
+            if (!Double.isNaN(run("generateHTMLContent.miss", i -> manager.generateHTMLContent(notes.get((int) ((i * 7919L) % notes.size()))).length()))) {
+                System.out.println("  " + manager.getHtmlCacheStats());
+            }
+            // Re-renders the same few notes, as re-viewing does
+            manager.clearHtmlCache();
+            if (!Double.isNaN(run("generateHTMLContent.hit", i -> manager.generateHTMLContent(notes.get(i % 64)).length()))) {
+                System.out.println("  " + manager.getHtmlCacheStats());
+            }
+            // One search result chunk shown in a JTextPane, as IncrementalSearchWorker.process does on the EDT.
+            // A page grows by SEARCH_CHUNK notes per op up to MAX_RENDERED_RESULTS, then starts over; 1000 / (ops/s)
+            // is the EDT time per chunk in ms, to compare against the 16.7 ms of a 60 fps frame.
+            manager.setDisplayArea(new JTextPane());
+            int chunksPerPage = NoteManager.MAX_RENDERED_RESULTS / SEARCH_CHUNK;
+            run("searchResults.rerender", i -> {
+                int shown = (i % chunksPerPage + 1) * SEARCH_CHUNK;
+                manager.displaySearchResults(notes.subList(0, shown), shown, false);
+                return shown;
+            });
+            run("searchResults.append", i -> {
+                int chunk = i % chunksPerPage;
+                List<Note> added = notes.subList(chunk * SEARCH_CHUNK, (chunk + 1) * SEARCH_CHUNK);
+                if (chunk == 0) {
+                    manager.displaySearchResults(added, SEARCH_CHUNK, false);
+                } else {
+                    manager.appendSearchResults(added, (chunk + 1) * SEARCH_CHUNK, (chunk + 1) * SEARCH_CHUNK);
+                }
+                return chunk;
+            });
+            run("loadNotes", i -> {
+                NoteStore loaded = new NoteStore(dataFile);
+                try {
+                    loaded.load();
+                } catch (IOException | ClassNotFoundException e) {
+                    throw new IllegalStateException(e);
+                }
+                return loaded.snapshot().size();
+            });
+            // Last, since every call grows the store; includes the full saveNotes it triggers
+            run("addNote+saveNotes", i -> manager.addNote("Benchmark " + i, "Body " + i, corpus.category(0)).getTitle().length());
+        } finally {
+            try (Stream<Path> files = Files.list(directory)) {
+                for (Path file : (Iterable<Path>) files::iterator) {
+                    Files.deleteIfExists(file);
+                }
+            }
+            Files.deleteIfExists(directory);
+        }
+    }
+
+    // Scans with a single chunk on the calling thread, then with pools of growing size
+    private void runScaling(List<Note> notes, NoteMatcher matcher) {
+        ParallelNoteScanner sequential = new ParallelNoteScanner(ForkJoinPool.commonPool(), Integer.MAX_VALUE);
+        double baseline = run("scanner.sequential", i -> sequential.scan(notes, matcher, 100).size());
+        for (int threads = 1; threads <= maxThreads; threads = threads == maxThreads ? threads + 1 : Math.min(threads * 2, maxThreads)) {
+            ForkJoinPool pool = new ForkJoinPool(threads);
+            try {
+                ParallelNoteScanner scanner = new ParallelNoteScanner(pool, ParallelNoteScanner.DEFAULT_CHUNK_SIZE);
+                double throughput = run("scanner.parallel-" + threads, i -> scanner.scan(notes, matcher, 100).size());
+                if (!Double.isNaN(throughput) && !Double.isNaN(baseline)) {
+                    System.out.printf("  %.2fx the sequential scan on %d threads%n", throughput / baseline, threads);
+                }
+            } finally {
+                pool.shutdown();
+            }
+        }
+    }
+
+    // Returns the mean throughput, or NaN if the filter skipped the benchmark
+    private double run(String name, IntFunction<Integer> operation) {
+        if (!name.contains(filter)) {
+            return Double.NaN;
+        }
+        int[] counter = {0};
+        for (int w = 0; w < WARMUP_ITERATIONS; w++) {
+            iterate(operation, counter);
+        }
+        double[] throughput = new double[MEASURED_ITERATIONS];
+        long totalOps = 0;
+        long totalAllocated = 0;
+        for (int m = 0; m < MEASURED_ITERATIONS; m++) {
+            long allocatedBefore = allocatedBytes();
+            long start = System.nanoTime();
+            long ops = iterate(operation, counter);
+            long elapsed = System.nanoTime() - start;
+            totalAllocated += allocatedBytes() - allocatedBefore;
+            totalOps += ops;
+            throughput[m] = ops * 1e9 / elapsed;
+        }
+        double mean = Arrays.stream(throughput).average().orElse(0);
+        double spread = Math.sqrt(Arrays.stream(throughput).map(t -> (t - mean) * (t - mean)).sum() / (MEASURED_ITERATIONS - 1));
+        System.out.printf("%-28s %,9d %,14.2f %,12.2f %,16d%n", name, size, mean, spread, totalAllocated / Math.max(totalOps, 1));
+        return mean;
+    }
+
+    // Runs the operation until the iteration time is used up, at least once
+    private long iterate(IntFunction<Integer> operation, int[] counter) {
+        long deadline = System.nanoTime() + iterationMillis * 1_000_000;
+        long ops = 0;
+        do {
+            sink += operation.apply(counter[0]++);
+            ops++;
+        } while (System.nanoTime() < deadline);
+        return ops;
+    }
+
+    // Bytes allocated so far by all live threads, so work done on the fork-join pool is counted too
+    private static long allocatedBytes() {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long total = 0;
+        for (long allocated : threads.getThreadAllocatedBytes(threads.getAllThreadIds())) {
+            total += Math.max(allocated, 0);
+        }
+        return total;
+    }
+}
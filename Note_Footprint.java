@@ -0,0 +1,106 @@
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+// Measures the retained heap per note for the compact Note against the original field layout.
+// Usage: java NoteFootprint [noteCount]
+class NoteFootprint {
+
+    private static final String[] CATEGORIES = {"Work", "Personal", "Ideas", "Research", "Travel", "Recipes", "Finance", "Health"};
+    private static final int TAG_POOL = 50;
+
+    // The field layout Note had before tags and categories were dictionary-encoded
+    private static final class LegacyNote {
+        final String title;
+        final String content;
+        final LocalDateTime creationDate;
+        final List<String> tags;
+        final String category;
+
+        LegacyNote(String title, String content, String category, List<String> tags) {
+            this.title = title;
+            this.content = content;
+            this.creationDate = LocalDateTime.now();
+            this.tags = tags;
+            this.category = category;
+        }
+    }
+
+    public static void main(String[] args) {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 100_000;
+
+        long before = usedHeap();
+        List<Object> legacy = new ArrayList<>(count);
+        Random random = new Random(42);
+        for (int i = 0; i < count; i++) {
+            // Distinct String instances per note, as they are after typing or deserializing
+            legacy.add(new LegacyNote(title(i), content(random), new String(category(random)), tags(random)));
+        }
+        long legacyBytes = usedHeap() - before;
+        report("Legacy layout", legacyBytes, count);
+        legacy = null;
+
+        before = usedHeap();
+        List<Note> compact = new ArrayList<>(count);
+        random = new Random(42);
+        for (int i = 0; i < count; i++) {
+            Note note = new Note(title(i), content(random), new String(category(random)));
+            note.setTags(tags(random));
+            compact.add(note);
+        }
+        long compactBytes = usedHeap() - before;
+        report("Compact layout", compactBytes, count);
+
+        // Reading compact here keeps it reachable until after the measurement
+        System.out.printf("Saved %.1f%% over %,d notes (%d distinct tags and categories in the dictionary)%n",
+                100.0 * (legacyBytes - compactBytes) / legacyBytes, compact.size(), NoteDictionary.INSTANCE.size());
+    }
+
+    private static String title(int i) {
+        return "Note " + i;
+    }
+
+    private static String content(Random random) {
+        StringBuilder sb = new StringBuilder();
+        int words = 20 + random.nextInt(40);
+        for (int w = 0; w < words; w++) {
+            sb.append("word").append(random.nextInt(1000)).append(' ');
+        }
+        return sb.toString();
+    }
+
+    private static String category(Random random) {
+        return CATEGORIES[random.nextInt(CATEGORIES.length)];
+    }
+
+    private static List<String> tags(Random random) {
+        int count = random.nextInt(5);
+        List<String> tags = new ArrayList<>();
+        for (int t = 0; t < count; t++) {
+            String tag = "tag" + random.nextInt(TAG_POOL);
+            if (!tags.contains(tag)) {
+                tags.add(tag);
+            }
+        }
+        return tags;
+    }
+
+    private static void report(String label, long bytes, int count) {
+        System.out.printf("%-15s %,d notes, %,d bytes, %,d bytes/note%n", label, count, bytes, bytes / count);
+    }
+
+    // Heap in use after letting the collector settle; good enough for per-note averages over many notes
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 4; i++) {
+            System.gc();
+            try {
+                Thread.sleep(50);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
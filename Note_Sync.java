@@ -0,0 +1,460 @@
+import java.io.*;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.security.GeneralSecurityException;
+import java.security.KeyPair;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+// Delta synchronization of two note stores over an encrypted SecureChannel.
+//
+// Every note and tombstone carries a hybrid logical clock stamp and the id of the instance that wrote it;
+// for each note id the record with the greatest (stamp, origin, content hash) wins. The two ends find what
+// differs by comparing Merkle-style digests: a root digest, then one digest per bucket of ids, then the
+// (id, stamp, content hash) entries of the differing buckets only. Each end then sends just the records the
+// other is missing or holds an older copy of, in batches. The protocol is half-duplex, so neither end can block the other on
+// a full socket buffer: the connecting end writes each block first and the accepting end answers it.
+//
+// A running Note Taker syncs its own store in-process (its Sync Now button, or -Dnotesync.port to serve),
+// and holds a lock on the notes file meanwhile; this command line is for when the app is not running.
+//
+// Peers authenticate with RSA identity keys kept in sync_public.key and sync_private.key. Each end only
+// accepts peers whose key is listed in its sync_trusted.keys; "identity" prints the line to add there.
+//
+// The server listens on the loopback interface unless given an address to bind to.
+//
+// Usage: java NoteSync serve <port> [dataFile] [bindAddress]
+//        java NoteSync sync <host> <port> [dataFile]
+//        java NoteSync identity
+class NoteSync {
+
+    static final int BUCKETS = 256;
+    static final int BATCH_SIZE = 256; // Records per message
+    static final String PUBLIC_KEY_FILE = "sync_public.key";
+    static final String PRIVATE_KEY_FILE = "sync_private.key";
+    static final String TRUSTED_KEYS_FILE = "sync_trusted.keys";
+    static final int TIMEOUT_MILLIS = 30_000; // A peer that stalls this long is dropped
+
+    private static final String END = "END";
+
+    private final NoteStore store;
+    private final SecureChannel channel;
+    private final boolean initiator;
+
+    // What one sync run did, for logging
+    static final class Result {
+        int differingBuckets;
+        int recordsSent;
+        int recordsReceived;
+        int recordsApplied;
+
+        @Override
+        public String toString() {
+            return String.format("%d differing buckets, sent %d, received %d, applied %d",
+                    differingBuckets, recordsSent, recordsReceived, recordsApplied);
+        }
+    }
+
+    // The sync-relevant part of a note or tombstone
+    private static final class Entry {
+        final String id;
+        final long modified;
+        final String origin;
+        final String hash; // Note.contentHash(), or Tombstone.CONTENT_HASH
+        final boolean deleted;
+
+        Entry(String id, long modified, String origin, String hash, boolean deleted) {
+            this.id = id;
+            this.modified = modified;
+            this.origin = origin;
+            this.hash = hash;
+            this.deleted = deleted;
+        }
+
+        boolean isNewerThan(Entry other) {
+            return other == null
+                    || NoteStore.compareStamps(modified, origin, hash, other.modified, other.origin, other.hash) > 0;
+        }
+    }
+
+    private interface Block {
+        void run() throws IOException;
+    }
+
+    public NoteSync(NoteStore store, SecureChannel channel, boolean initiator) {
+        this.store = store;
+        this.channel = channel;
+        this.initiator = initiator;
+    }
+
+    public static void main(String[] args) {
+        boolean serve = args.length >= 2 && args[0].equals("serve");
+        boolean sync = args.length >= 3 && args[0].equals("sync");
+        boolean identity = args.length == 1 && args[0].equals("identity");
+        if (!serve && !sync && !identity) {
+            System.out.println("Usage: java NoteSync serve <port> [dataFile] [bindAddress]");
+            System.out.println("       java NoteSync sync <host> <port> [dataFile]");
+            System.out.println("       java NoteSync identity");
+            return;
+        }
+        try {
+            KeyPair keyPair = loadIdentity();
+            if (identity) {
+                System.out.println("Fingerprint: " + SecureChannel.fingerprint(keyPair.getPublic()));
+                System.out.println("Add this line to " + TRUSTED_KEYS_FILE + " on each peer:");
+                System.out.println(TrustedKeys.encode(keyPair.getPublic()) + " " + InetAddress.getLocalHost().getHostName());
+                return;
+            }
+            int dataFileArg = serve ? 2 : 3;
+            NoteStore store = new NoteStore(Paths.get(args.length > dataFileArg ? args[dataFileArg] : NoteStore.DEFAULT_DATA_FILE));
+            if (!store.tryLock()) {
+                System.err.println("The notes file is in use by another process; sync from the running Note Taker instead");
+                return;
+            }
+            store.load();
+            if (serve) {
+                InetAddress bindAddress = args.length > 3 ? InetAddress.getByName(args[3]) : InetAddress.getLoopbackAddress();
+                serve(store, bindAddress, Integer.parseInt(args[1]), keyPair, trustedKeys());
+            } else {
+                Result result = syncWith(store, args[1], Integer.parseInt(args[2]), keyPair, trustedKeys());
+                System.out.println("Synchronized: " + result);
+            }
+        } catch (IOException | ClassNotFoundException | GeneralSecurityException e) {
+            Logger.getLogger(NoteSync.class.getName()).log(Level.SEVERE, "Sync failed: ", e);
+            System.err.println("Sync failed: " + e.getMessage());
+        }
+    }
+
+    static KeyPair loadIdentity() throws IOException, GeneralSecurityException {
+        return SecureChannel.loadIdentity(new File(PUBLIC_KEY_FILE), new File(PRIVATE_KEY_FILE));
+    }
+
+    static TrustedKeys trustedKeys() {
+        return new TrustedKeys(Paths.get(TRUSTED_KEYS_FILE));
+    }
+
+    // Connects to a sync server, runs one sync and saves the merged store
+    static Result syncWith(NoteStore store, String host, int port, KeyPair identity, SecureChannel.PeerTrust trust)
+            throws IOException, GeneralSecurityException {
+        try (Socket socket = new Socket()) {
+            socket.connect(new InetSocketAddress(host, port), TIMEOUT_MILLIS);
+            socket.setSoTimeout(TIMEOUT_MILLIS);
+            Result result = new NoteSync(store, SecureChannel.open(socket, identity, trust), true).run();
+            store.save();
+            return result;
+        }
+    }
+
+    // Answers sync requests one connection at a time, saving after each. A failure, whatever the peer sent,
+    // only ends that peer's connection.
+    static void serve(NoteStore store, InetAddress bindAddress, int port, KeyPair identity, SecureChannel.PeerTrust trust) throws IOException {
+        try (ServerSocket serverSocket = new ServerSocket(port, 50, bindAddress)) {
+            System.out.println("Sync server listening on " + bindAddress.getHostAddress() + " port " + port);
+            while (true) {
+                try (Socket socket = serverSocket.accept()) {
+                    socket.setSoTimeout(TIMEOUT_MILLIS);
+                    Result result = new NoteSync(store, SecureChannel.open(socket, identity, trust), false).run();
+                    store.save();
+                    System.out.println("Synchronized with " + socket.getInetAddress() + ": " + result);
+                } catch (IOException | GeneralSecurityException | RuntimeException e) {
+                    Logger.getLogger(NoteSync.class.getName()).log(Level.WARNING, "Sync with peer failed: ", e);
+                }
+            }
+        }
+    }
+
+    // Runs one sync; both stores hold the same notes afterwards unless either was edited meanwhile
+    public Result run() throws IOException {
+        Result result = new Result();
+        NoteStore.Snapshot snapshot = store.snapshot();
+        List<Map<String, Entry>> buckets = bucketize(snapshot);
+        byte[][] digests = new byte[BUCKETS][];
+        for (int b = 0; b < BUCKETS; b++) {
+            digests[b] = digest(buckets.get(b));
+        }
+
+        // 1. Root digests: equal roots mean there is nothing to do
+        String[] peerRoot = new String[1];
+        exchange(() -> channel.send("ROOT " + hex(rootDigest(digests))),
+                () -> peerRoot[0] = expect("ROOT"));
+        if (peerRoot[0].equals(hex(rootDigest(digests)))) {
+            return result;
+        }
+
+        // 2. Bucket digests
+        String[] peerBuckets = new String[1];
+        exchange(() -> channel.send("BUCKETS " + joinHex(digests)),
+                () -> peerBuckets[0] = expect("BUCKETS"));
+        String[] peerDigests = peerBuckets[0].split(",");
+        if (peerDigests.length != BUCKETS) {
+            throw new IOException("Peer sent " + peerDigests.length + " bucket digests, expected " + BUCKETS);
+        }
+        List<Integer> differing = new ArrayList<>();
+        for (int b = 0; b < BUCKETS; b++) {
+            if (!peerDigests[b].equals(hex(digests[b]))) {
+                differing.add(b);
+            }
+        }
+        result.differingBuckets = differing.size();
+
+        // 3. Entries of the differing buckets
+        Map<String, Entry> peerEntries = new HashMap<>();
+        exchange(() -> sendEntries(buckets, differing), () -> receiveEntries(peerEntries));
+
+        // 4. Records the peer lacks or has an older copy of
+        List<Note> notesToSend = new ArrayList<>();
+        List<NoteStore.Tombstone> tombstonesToSend = new ArrayList<>();
+        for (int b : differing) {
+            for (Entry entry : buckets.get(b).values()) {
+                if (entry.isNewerThan(peerEntries.get(entry.id))) {
+                    if (entry.deleted) {
+                        tombstonesToSend.add(snapshot.getTombstone(entry.id));
+                    } else {
+                        notesToSend.add(snapshot.get(entry.id));
+                    }
+                }
+            }
+        }
+        result.recordsSent = notesToSend.size() + tombstonesToSend.size();
+        exchange(() -> sendRecords(notesToSend, tombstonesToSend), () -> receiveRecords(result));
+        return result;
+    }
+
+    // Half-duplex: the initiator writes first, the other end reads first
+    private void exchange(Block send, Block receive) throws IOException {
+        if (initiator) {
+            send.run();
+            receive.run();
+        } else {
+            receive.run();
+            send.run();
+        }
+    }
+
+    private void sendEntries(List<Map<String, Entry>> buckets, List<Integer> differing) throws IOException {
+        StringBuilder sb = new StringBuilder();
+        int count = 0;
+        for (int b : differing) {
+            for (Entry entry : buckets.get(b).values()) {
+                sb.append(count == 0 ? "ENTRIES [" : ",").append('[');
+                NoteTransfer.appendJsonString(sb, entry.id);
+                sb.append(',').append(entry.modified).append(',');
+                NoteTransfer.appendJsonString(sb, entry.origin);
+                sb.append(',');
+                NoteTransfer.appendJsonString(sb, entry.hash);
+                sb.append(',').append(entry.deleted).append(']');
+                if (++count == BATCH_SIZE) {
+                    channel.send(sb.append(']').toString());
+                    sb.setLength(0);
+                    count = 0;
+                }
+            }
+        }
+        if (count > 0) {
+            channel.send(sb.append(']').toString());
+        }
+        channel.send(END);
+    }
+
+    private void receiveEntries(Map<String, Entry> into) throws IOException {
+        String message;
+        while (!(message = receive()).equals(END)) {
+            for (Object item : parseArray(message, "ENTRIES")) {
+                List<?> fields = fields(item, 5, "ENTRIES");
+                String id = string(fields.get(0), false, "ENTRIES");
+                String hash = string(fields.get(3), false, "ENTRIES");
+                if (!(fields.get(4) instanceof Boolean) || hash.length() > 64) {
+                    throw malformed("ENTRIES");
+                }
+                into.put(id, new Entry(id, number(fields.get(1), "ENTRIES"), string(fields.get(2), true, "ENTRIES"),
+                        hash, (Boolean) fields.get(4)));
+            }
+        }
+    }
+
+    private void sendRecords(List<Note> notes, List<NoteStore.Tombstone> tombstones) throws IOException {
+        for (int from = 0; from < notes.size(); from += BATCH_SIZE) {
+            StringBuilder sb = new StringBuilder("NOTES [");
+            for (int i = from; i < Math.min(from + BATCH_SIZE, notes.size()); i++) {
+                sb.append(i == from ? "" : ",").append(NoteTransfer.toJson(notes.get(i)));
+            }
+            channel.send(sb.append(']').toString());
+        }
+        for (int from = 0; from < tombstones.size(); from += BATCH_SIZE) {
+            StringBuilder sb = new StringBuilder("TOMBSTONES [");
+            for (int i = from; i < Math.min(from + BATCH_SIZE, tombstones.size()); i++) {
+                NoteStore.Tombstone tombstone = tombstones.get(i);
+                sb.append(i == from ? "[" : ",[");
+                NoteTransfer.appendJsonString(sb, tombstone.id);
+                sb.append(',').append(tombstone.modified).append(',');
+                NoteTransfer.appendJsonString(sb, tombstone.origin);
+                sb.append(']');
+            }
+            channel.send(sb.append(']').toString());
+        }
+        channel.send(END);
+    }
+
+    // Applies each received batch as it arrives, so memory stays bounded by the batch size
+    @SuppressWarnings("unchecked")
+    private void receiveRecords(Result result) throws IOException {
+        String message;
+        while (!(message = receive()).equals(END)) {
+            List<Note> notes = new ArrayList<>();
+            List<NoteStore.Tombstone> tombstones = new ArrayList<>();
+            if (message.startsWith("NOTES ")) {
+                for (Object item : parseArray(message, "NOTES")) {
+                    if (!(item instanceof Map)) {
+                        throw malformed("NOTES");
+                    }
+                    try {
+                        notes.add(NoteTransfer.fromFields((Map<String, Object>) item));
+                    } catch (IllegalArgumentException e) {
+                        throw new IOException("Malformed NOTES message from peer: " + e.getMessage(), e);
+                    }
+                }
+            } else {
+                for (Object item : parseArray(message, "TOMBSTONES")) {
+                    List<?> fields = fields(item, 3, "TOMBSTONES");
+                    tombstones.add(new NoteStore.Tombstone(string(fields.get(0), false, "TOMBSTONES"),
+                            number(fields.get(1), "TOMBSTONES"), string(fields.get(2), true, "TOMBSTONES")));
+                }
+            }
+            result.recordsReceived += notes.size() + tombstones.size();
+            try {
+                result.recordsApplied += store.merge(notes, tombstones);
+            } catch (IllegalArgumentException e) {
+                throw new IOException("Refused records from peer: " + e.getMessage(), e);
+            }
+        }
+    }
+
+    private String receive() throws IOException {
+        String message = channel.receive();
+        if (message == null) {
+            throw new EOFException("Peer closed the connection during sync");
+        }
+        return message;
+    }
+
+    private String expect(String keyword) throws IOException {
+        String message = receive();
+        if (!message.startsWith(keyword + " ")) {
+            throw new IOException("Expected " + keyword + " from peer");
+        }
+        return message.substring(keyword.length() + 1);
+    }
+
+    private static List<?> parseArray(String message, String keyword) throws IOException {
+        if (!message.startsWith(keyword + " ")) {
+            throw new IOException("Expected " + keyword + " from peer");
+        }
+        Object value;
+        try {
+            value = new NoteTransfer.JsonReader(message.substring(keyword.length() + 1)).readValue();
+        } catch (IllegalArgumentException | IndexOutOfBoundsException e) {
+            throw new IOException("Malformed " + keyword + " message from peer: " + e.getMessage(), e);
+        }
+        if (!(value instanceof List)) {
+            throw malformed(keyword);
+        }
+        return (List<?>) value;
+    }
+
+    // Checks for an array of at least count fields
+    private static List<?> fields(Object item, int count, String keyword) throws IOException {
+        if (!(item instanceof List) || ((List<?>) item).size() < count) {
+            throw malformed(keyword);
+        }
+        return (List<?>) item;
+    }
+
+    private static String string(Object value, boolean nullable, String keyword) throws IOException {
+        if (value instanceof String || (nullable && value == null)) {
+            return (String) value;
+        }
+        throw malformed(keyword);
+    }
+
+    private static long number(Object value, String keyword) throws IOException {
+        if (!(value instanceof Number)) {
+            throw malformed(keyword);
+        }
+        return ((Number) value).longValue();
+    }
+
+    private static IOException malformed(String keyword) {
+        return new IOException("Malformed " + keyword + " message from peer");
+    }
+
+    // Groups entries by a bucket derived from the id. String.hashCode is specified, so both ends agree.
+    // Entries are kept sorted by id so bucket digests do not depend on insertion order.
+    private static List<Map<String, Entry>> bucketize(NoteStore.Snapshot snapshot) {
+        List<Map<String, Entry>> buckets = new ArrayList<>(BUCKETS);
+        for (int b = 0; b < BUCKETS; b++) {
+            buckets.add(new TreeMap<>());
+        }
+        for (Note note : snapshot.getNotes()) {
+            buckets.get(bucketOf(note.getId())).put(note.getId(),
+                    new Entry(note.getId(), note.getModified(), note.getOrigin(), note.contentHash(), false));
+        }
+        for (NoteStore.Tombstone tombstone : snapshot.getTombstones()) {
+            buckets.get(bucketOf(tombstone.id)).put(tombstone.id,
+                    new Entry(tombstone.id, tombstone.modified, tombstone.origin, NoteStore.Tombstone.CONTENT_HASH, true));
+        }
+        return buckets;
+    }
+
+    static int bucketOf(String id) {
+        return Math.floorMod(id.hashCode(), BUCKETS);
+    }
+
+    private static byte[] digest(Map<String, Entry> bucket) {
+        MessageDigest sha256 = sha256();
+        for (Entry entry : bucket.values()) {
+            String line = entry.id + '\0' + entry.modified + '\0' + entry.origin + '\0' + entry.hash + '\0'
+                    + (entry.deleted ? 'D' : 'N') + '\n';
+            sha256.update(line.getBytes(StandardCharsets.UTF_8));
+        }
+        return sha256.digest();
+    }
+
+    private static byte[] rootDigest(byte[][] bucketDigests) {
+        MessageDigest sha256 = sha256();
+        for (byte[] bucketDigest : bucketDigests) {
+            sha256.update(bucketDigest);
+        }
+        return sha256.digest();
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is required by every Java platform", e);
+        }
+    }
+
+    private static String joinHex(byte[][] digests) {
+        StringBuilder sb = new StringBuilder(digests.length * 65);
+        for (int i = 0; i < digests.length; i++) {
+            sb.append(i == 0 ? "" : ",").append(hex(digests[i]));
+        }
+        return sb.toString();
+    }
+
+    private static String hex(byte[] bytes) {
+        StringBuilder sb = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            sb.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return sb.toString();
+    }
+}
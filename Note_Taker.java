@@ -1,34 +1,179 @@
 import java.io.*;
 import java.util.*;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.Consumer;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import javax.swing.*;
+import javax.swing.Timer;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
 import javax.swing.event.HyperlinkEvent;
 import javax.swing.event.HyperlinkListener;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.Element;
+import javax.swing.text.html.HTMLDocument;
 import javax.swing.text.html.HTMLEditorKit;
 import javax.swing.text.html.StyleSheet;
 import java.awt.*;
 import java.awt.event.*;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.net.InetAddress;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
 import java.time.LocalDateTime;
+import java.time.ZoneId;
 import java.time.format.DateTimeFormatter;
 
-// Class to represent a note
+// Dictionary that encodes repeated strings (tags, categories) as small int ids shared by every note
+final class NoteDictionary {
+
+    static final NoteDictionary INSTANCE = new NoteDictionary();
+    static final int NONE = -1; // Encodes a null string
+
+    private final Map<String, Integer> ids = new ConcurrentHashMap<>();
+    private volatile String[] values = new String[64];
+    private int size; // Guarded by this
+
+    private NoteDictionary() {
+    }
+
+    // Returns the id for value, assigning a new one the first time it is seen
+    int encode(String value) {
+        if (value == null) {
+            return NONE;
+        }
+        Integer id = ids.get(value);
+        return id != null ? id : assign(value);
+    }
+
+    // Returns the id for value without assigning one, or NONE if it has never been encoded
+    int lookup(String value) {
+        Integer id = value == null ? null : ids.get(value);
+        return id != null ? id : NONE;
+    }
+
+    String decode(int id) {
+        return id == NONE ? null : values[id];
+    }
+
+    int size() {
+        return ids.size();
+    }
+
+    private synchronized int assign(String value) {
+        Integer existing = ids.get(value);
+        if (existing != null) {
+            return existing;
+        }
+        String[] current = values;
+        if (size == current.length) {
+            current = Arrays.copyOf(current, size * 2);
+        }
+        current[size] = value;
+        values = current; // Publish the array before the id, so readers never see an id without its value
+        ids.put(value, size);
+        return size++;
+    }
+}
+
+// Class to represent a note.
+// Tags and category are stored as dictionary ids, the creation time as epoch millis and large bodies
+// deflated, which keeps per-note overhead low. The serialized form is unchanged from the original
+// field layout, so existing notes.dat files still load.
 class Note implements Serializable {
     private static final long serialVersionUID = 1L; // Add serialVersionUID for serialization
+    // DateTimeFormatter is immutable and thread-safe, so one instance serves every note
+    static final DateTimeFormatter DATE_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+    // Bodies at least this many characters long are kept deflated; 0 disables compression
+    static final int COMPRESSION_THRESHOLD = Integer.getInteger("notes.compressionThreshold", 16 * 1024);
+    private static final int[] NO_TAGS = new int[0];
+
+    // The original field layout, written and read by writeObject/readObject
+    private static final ObjectStreamField[] serialPersistentFields = {
+            new ObjectStreamField("id", String.class),
+            new ObjectStreamField("title", String.class),
+            new ObjectStreamField("content", String.class),
+            new ObjectStreamField("creationDate", LocalDateTime.class),
+            new ObjectStreamField("tags", List.class),
+            new ObjectStreamField("category", String.class),
+            new ObjectStreamField("version", long.class),
+            new ObjectStreamField("modified", long.class),
+            new ObjectStreamField("origin", String.class)
+    };
+
+    private String id; // Stable identifier, unaffected by list position
     private String title;
-    private String content;
-    private LocalDateTime creationDate;
-    private List<String> tags;
-    private String category; // Added category
+    private String content; // Null when the body is held in compressedContent
+    private byte[] compressedContent;
+    private long creationMillis; // Epoch millis, UTC
+    private int[] tagIds;
+    private int categoryId; // Added category
+    private long version; // Bumped on every change so cached renderings can be detected as stale
+    private long modified; // Hybrid logical clock stamp of the last change, used to order changes between instances
+    private int originId = NoteDictionary.NONE; // Dictionary id of the instance that made the last change
+    private transient String contentHash; // Cached by contentHash(), valid while hashedVersion == version
+    private transient long hashedVersion;
 
     public Note(String title, String content, String category) {
+        this.id = UUID.randomUUID().toString();
         this.title = title;
-        this.content = content;
-        this.creationDate = LocalDateTime.now();
-        this.tags = new ArrayList<>();
-        this.category = category;
+        storeContent(content);
+        this.creationMillis = System.currentTimeMillis();
+        this.tagIds = NO_TAGS;
+        this.categoryId = NoteDictionary.INSTANCE.encode(category);
+    }
+
+    // Rebuilds a note read from an export, keeping its id, creation time and version
+    Note(String id, String title, String content, String category, List<String> tags, long creationMillis, long version) {
+        this.id = id != null ? id : UUID.randomUUID().toString();
+        this.title = title;
+        storeContent(content);
+        this.creationMillis = creationMillis;
+        this.tagIds = encodeTags(tags);
+        this.categoryId = NoteDictionary.INSTANCE.encode(category);
+        this.version = version;
+    }
+
+    // Copy constructor used by NoteStore: published notes are never modified, writers change a copy.
+    // The tag array and compressed body are replaced rather than mutated, so sharing them is safe.
+    Note(Note other) {
+        this.id = other.id;
+        this.title = other.title;
+        this.content = other.content;
+        this.compressedContent = other.compressedContent;
+        this.creationMillis = other.creationMillis;
+        this.tagIds = other.tagIds;
+        this.categoryId = other.categoryId;
+        this.version = other.version;
+        this.modified = other.modified;
+        this.originId = other.originId;
+        this.contentHash = other.contentHash;
+        this.hashedVersion = other.hashedVersion;
+    }
+
+    public String getId() {
+        return id;
     }
 
     public String getTitle() {
@@ -37,67 +182,1160 @@ class Note implements Serializable {
 
     public void setTitle(String title) {
         this.title = title;
+        version++;
     }
 
     public String getContent() {
-        return content;
+        return content != null ? content : inflate(compressedContent);
     }
 
     public void setContent(String content) {
-        this.content = content;
+        storeContent(content);
+        version++;
     }
 
     public LocalDateTime getCreationDate() {
-        return creationDate;
+        return LocalDateTime.ofInstant(Instant.ofEpochMilli(creationMillis), ZoneId.systemDefault());
     }
 
+    public long getCreationMillis() {
+        return creationMillis;
+    }
+
+    // Returns a read-only view; use addTag/removeTag/setTags to change tags
     public List<String> getTags() {
-        return tags;
+        String[] tags = new String[tagIds.length];
+        for (int i = 0; i < tagIds.length; i++) {
+            tags[i] = NoteDictionary.INSTANCE.decode(tagIds[i]);
+        }
+        return Collections.unmodifiableList(Arrays.asList(tags));
     }
 
     public void setTags(List<String> tags) {
-        this.tags = tags;
+        this.tagIds = encodeTags(tags);
+        version++;
     }
 
      public String getCategory() {
-        return category;
+        return NoteDictionary.INSTANCE.decode(categoryId);
     }
 
     public void setCategory(String category) {
-        this.category = category;
+        this.categoryId = NoteDictionary.INSTANCE.encode(category);
+        version++;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public long getModified() {
+        return modified;
+    }
+
+    public String getOrigin() {
+        return NoteDictionary.INSTANCE.decode(originId);
+    }
+
+    // Records which instance made the last change and when; set by NoteStore and by sync, not by editors
+    void stamp(long modified, String origin) {
+        this.modified = modified;
+        this.originId = NoteDictionary.INSTANCE.encode(origin);
+    }
+
+    // A digest of everything sync copies between instances except the stamp, so replicas holding different
+    // contents under the same stamp can tell, and agree on which copy wins
+    String contentHash() {
+        String hash = contentHash;
+        if (hash == null || hashedVersion != version) {
+            MessageDigest sha256;
+            try {
+                sha256 = MessageDigest.getInstance("SHA-256");
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException("SHA-256 is required by every Java platform", e);
+            }
+            StringBuilder sb = new StringBuilder();
+            for (String field : new String[] { title, getContent(), getCategory() }) {
+                sb.append(field == null ? "\1" : field).append('\0');
+            }
+            for (String tag : getTags()) {
+                sb.append(tag).append('\0');
+            }
+            sb.append(creationMillis);
+            byte[] digest = sha256.digest(sb.toString().getBytes(StandardCharsets.UTF_8));
+            StringBuilder hex = new StringBuilder(16);
+            for (int i = 0; i < 8; i++) {
+                hex.append(String.format("%02x", digest[i]));
+            }
+            hash = hex.toString();
+            hashedVersion = version;
+            contentHash = hash;
+        }
+        return hash;
+    }
+
+    // Checks for a tag without decoding the tag list
+    public boolean hasTag(String tag) {
+        int tagId = NoteDictionary.INSTANCE.lookup(tag);
+        return tagId != NoteDictionary.NONE && indexOfTag(tagId) >= 0;
     }
 
     public void addTag(String tag) {
-        if (!tags.contains(tag)) {
-            this.tags.add(tag);
+        int tagId = NoteDictionary.INSTANCE.encode(tag);
+        if (indexOfTag(tagId) < 0) {
+            int[] grown = Arrays.copyOf(tagIds, tagIds.length + 1);
+            grown[tagIds.length] = tagId;
+            this.tagIds = grown;
+            version++;
         }
     }
 
     public void removeTag(String tag) {
-        tags.remove(tag);
+        int index = indexOfTag(NoteDictionary.INSTANCE.lookup(tag));
+        if (index >= 0) {
+            int[] shrunk = new int[tagIds.length - 1];
+            System.arraycopy(tagIds, 0, shrunk, 0, index);
+            System.arraycopy(tagIds, index + 1, shrunk, index, shrunk.length - index);
+            this.tagIds = shrunk.length == 0 ? NO_TAGS : shrunk;
+            version++;
+        }
+    }
+
+    private int indexOfTag(int tagId) {
+        for (int i = 0; i < tagIds.length; i++) {
+            if (tagIds[i] == tagId) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static int[] encodeTags(List<String> tags) {
+        if (tags == null || tags.isEmpty()) {
+            return NO_TAGS;
+        }
+        int[] encoded = new int[tags.size()];
+        int count = 0;
+        for (String tag : tags) {
+            int tagId = NoteDictionary.INSTANCE.encode(tag);
+            boolean duplicate = false;
+            for (int i = 0; i < count && !duplicate; i++) {
+                duplicate = encoded[i] == tagId;
+            }
+            if (!duplicate) {
+                encoded[count++] = tagId;
+            }
+        }
+        return count == encoded.length ? encoded : Arrays.copyOf(encoded, count);
+    }
+
+    private void storeContent(String content) {
+        if (content != null && COMPRESSION_THRESHOLD > 0 && content.length() >= COMPRESSION_THRESHOLD) {
+            this.compressedContent = deflate(content);
+            this.content = null;
+        } else {
+            this.compressedContent = null;
+            this.content = content;
+        }
+    }
+
+    private static byte[] deflate(String text) {
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try {
+            deflater.setInput(text.getBytes(StandardCharsets.UTF_8));
+            deflater.finish();
+            ByteArrayOutputStream out = new ByteArrayOutputStream(text.length() / 4);
+            byte[] buffer = new byte[8192];
+            while (!deflater.finished()) {
+                out.write(buffer, 0, deflater.deflate(buffer));
+            }
+            return out.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private static String inflate(byte[] data) {
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(data);
+            ByteArrayOutputStream out = new ByteArrayOutputStream(data.length * 4);
+            byte[] buffer = new byte[8192];
+            while (!inflater.finished()) {
+                int n = inflater.inflate(buffer);
+                if (n == 0 && inflater.needsInput()) {
+                    throw new IllegalStateException("Truncated note content");
+                }
+                out.write(buffer, 0, n);
+            }
+            return new String(out.toByteArray(), StandardCharsets.UTF_8);
+        } catch (DataFormatException e) {
+            throw new IllegalStateException("Corrupt note content", e);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        ObjectOutputStream.PutField fields = out.putFields();
+        fields.put("id", id);
+        fields.put("title", title);
+        fields.put("content", getContent());
+        fields.put("creationDate", getCreationDate());
+        fields.put("tags", new ArrayList<>(getTags()));
+        fields.put("category", getCategory());
+        fields.put("version", version);
+        fields.put("modified", modified);
+        fields.put("origin", getOrigin());
+        out.writeFields();
+    }
+
+    // Notes saved before ids existed are given one when they are read back. It is derived from the
+    // title and creation time, so every copy of the same legacy file gives a note the same id.
+    @SuppressWarnings("unchecked")
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        ObjectInputStream.GetField fields = in.readFields();
+        title = (String) fields.get("title", null);
+        storeContent((String) fields.get("content", null));
+        LocalDateTime creationDate = (LocalDateTime) fields.get("creationDate", null);
+        id = (String) fields.get("id", null);
+        if (id == null) {
+            id = UUID.nameUUIDFromBytes((title + "\n" + creationDate).getBytes(StandardCharsets.UTF_8)).toString();
+        }
+        creationMillis = creationDate == null ? System.currentTimeMillis()
+                : creationDate.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        tagIds = encodeTags((List<String>) fields.get("tags", null));
+        categoryId = NoteDictionary.INSTANCE.encode((String) fields.get("category", null));
+        version = fields.get("version", 0L);
+        modified = fields.get("modified", 0L);
+        originId = NoteDictionary.INSTANCE.encode((String) fields.get("origin", null));
     }
 
     @Override
     public String toString() {
-        DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
-        return "Title: " + title + "\nCategory: " + category + "\nCreated: " + creationDate.format(formatter) + "\nTags: " + tags + "\nContent:\n" + content + "\n";
+        return "Title: " + title + "\nCategory: " + getCategory() + "\nCreated: " + getCreationDate().format(DATE_FORMATTER) + "\nTags: " + getTags() + "\nContent:\n" + getContent() + "\n";
+    }
+}
+
+// Bounded LRU cache of rendered note HTML, keyed by note id and the note's version
+class HtmlRenderCache {
+
+    private static final int DEFAULT_MAX_ENTRIES = 512;
+    private static final long DEFAULT_MAX_CHARS = 4L * 1024 * 1024; // About 8 MB of UTF-16 text
+
+    private final int maxEntries;
+    private final long maxChars; // Bounds memory too, since one large note can render to megabytes
+    private final LinkedHashMap<String, CachedFragment> entries;
+    private long hits;
+    private long misses;
+    private long cachedChars; // Total characters held, used for the memory estimate
+
+    // A rendered fragment together with the note version it was rendered from.
+    // The sync stamp is checked too, since a note replaced by another instance's copy can reuse a version number.
+    private static final class CachedFragment {
+        final long version;
+        final long modified;
+        final String html;
+
+        CachedFragment(Note note, String html) {
+            this.version = note.getVersion();
+            this.modified = note.getModified();
+            this.html = html;
+        }
+    }
+
+    public HtmlRenderCache() {
+        this(DEFAULT_MAX_ENTRIES, DEFAULT_MAX_CHARS);
+    }
+
+    public HtmlRenderCache(int maxEntries, long maxChars) {
+        this.maxEntries = maxEntries;
+        this.maxChars = maxChars;
+        // Access order turns the LinkedHashMap into an LRU list
+        this.entries = new LinkedHashMap<String, CachedFragment>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CachedFragment> eldest) {
+                if (size() > HtmlRenderCache.this.maxEntries) {
+                    cachedChars -= eldest.getValue().html.length();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    // Returns the cached HTML if it was rendered from the note's current version, otherwise null
+    public synchronized String get(Note note) {
+        CachedFragment fragment = entries.get(note.getId());
+        if (fragment != null && fragment.version == note.getVersion() && fragment.modified == note.getModified()) {
+            hits++;
+            return fragment.html;
+        }
+        misses++;
+        return null;
+    }
+
+    // Fragments larger than the whole budget are not cached; otherwise least recently used ones are
+    // evicted until the total fits
+    public synchronized void put(Note note, String html) {
+        if (html.length() > maxChars) {
+            invalidate(note.getId());
+            return;
+        }
+        CachedFragment previous = entries.put(note.getId(), new CachedFragment(note, html));
+        if (previous != null) {
+            cachedChars -= previous.html.length();
+        }
+        cachedChars += html.length();
+        Iterator<CachedFragment> eldest = entries.values().iterator();
+        while (cachedChars > maxChars && eldest.hasNext()) {
+            cachedChars -= eldest.next().html.length();
+            eldest.remove();
+        }
+    }
+
+    // Drops the rendering of a single note, e.g. after it was edited or deleted
+    public synchronized void invalidate(String noteId) {
+        CachedFragment removed = entries.remove(noteId);
+        if (removed != null) {
+            cachedChars -= removed.html.length();
+        }
+    }
+
+    // Empties the cache and starts the hit and miss counts over
+    public synchronized void clear() {
+        entries.clear();
+        cachedChars = 0;
+        hits = 0;
+        misses = 0;
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    public synchronized double getHitRate() {
+        long lookups = hits + misses;
+        return lookups == 0 ? 0.0 : (double) hits / lookups;
+    }
+
+    // Rough estimate of the heap held by cached fragments: String object plus its backing array.
+    // Assumes UTF-16 storage, so it is an upper bound when compact strings are in use.
+    public synchronized long getEstimatedBytes() {
+        return cachedChars * 2 + entries.size() * 96L;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("HtmlRenderCache[entries=%d/%d, hits=%d, misses=%d, hitRate=%.1f%%, ~%d/%d KB]",
+                entries.size(), maxEntries, hits, misses, getHitRate() * 100, getEstimatedBytes() / 1024, maxChars * 2 / 1024);
+    }
+}
+
+// A precompiled query that scores notes. Implementations are shared across scan threads, so they must be thread-safe.
+interface NoteMatcher {
+
+    int NO_MATCH = -1;
+
+    // Returns a relevance score (higher is better), or NO_MATCH
+    int score(Note note);
+
+    // Case-insensitive substring match that compares in place instead of lower-casing every note
+    static NoteMatcher containsIgnoreCase(String query) {
+        return note -> {
+            if (indexOfIgnoreCase(note.getTitle(), query) >= 0) {
+                return 2;
+            }
+            return indexOfIgnoreCase(note.getContent(), query) >= 0 ? 1 : NO_MATCH;
+        };
+    }
+
+    // Case-sensitive phrase match
+    static NoteMatcher phrase(String phrase) {
+        return note -> {
+            if (note.getTitle().contains(phrase)) {
+                return 2;
+            }
+            return note.getContent().contains(phrase) ? 1 : NO_MATCH;
+        };
+    }
+
+    // Regular expression match; the pattern is compiled once and each thread reuses its own Matcher
+    static NoteMatcher regex(String regex, int flags) {
+        Pattern pattern = Pattern.compile(regex, flags);
+        ThreadLocal<Matcher> matchers = ThreadLocal.withInitial(() -> pattern.matcher(""));
+        return note -> {
+            Matcher matcher = matchers.get();
+            if (matcher.reset(note.getTitle()).find()) {
+                return 2;
+            }
+            return matcher.reset(note.getContent()).find() ? 1 : NO_MATCH;
+        };
+    }
+
+    // Approximate, case-insensitive substring match allowing up to maxEdits insertions, deletions or substitutions.
+    // Fewer edits score higher, and a title match outranks a content match with the same number of edits.
+    static NoteMatcher fuzzy(String query, int maxEdits) {
+        char[] pattern = query.toLowerCase(Locale.ROOT).toCharArray();
+        ThreadLocal<int[]> rows = ThreadLocal.withInitial(() -> new int[pattern.length + 1]);
+        return note -> {
+            int[] row = rows.get();
+            int titleEdits = approximateEdits(pattern, note.getTitle(), maxEdits, row);
+            if (titleEdits == 0) {
+                return 2 * maxEdits + 1;
+            }
+            int contentEdits = approximateEdits(pattern, note.getContent(), maxEdits, row);
+            int titleScore = titleEdits <= maxEdits ? 2 * (maxEdits - titleEdits) + 1 : NO_MATCH;
+            int contentScore = contentEdits <= maxEdits ? 2 * (maxEdits - contentEdits) : NO_MATCH;
+            return Math.max(titleScore, contentScore);
+        };
+    }
+
+    static int indexOfIgnoreCase(String text, String query) {
+        int queryLength = query.length();
+        if (queryLength == 0) {
+            return 0;
+        }
+        char firstLower = Character.toLowerCase(query.charAt(0));
+        char firstUpper = Character.toUpperCase(query.charAt(0));
+        int last = text.length() - queryLength;
+        for (int i = 0; i <= last; i++) {
+            char c = text.charAt(i);
+            if ((c == firstLower || c == firstUpper || Character.toLowerCase(c) == firstLower)
+                    && text.regionMatches(true, i + 1, query, 1, queryLength - 1)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    // Sellers' dynamic programming: the fewest edits turning the pattern into any substring of text.
+    // Stops early on an exact hit; returns maxEdits + 1 when no substring is close enough.
+    static int approximateEdits(char[] pattern, String text, int maxEdits, int[] row) {
+        int m = pattern.length;
+        for (int i = 0; i <= m; i++) {
+            row[i] = i;
+        }
+        int best = row[m];
+        for (int j = 0; j < text.length() && best > 0; j++) {
+            char c = Character.toLowerCase(text.charAt(j));
+            int diagonal = 0; // row[0] of the previous column; a match may start anywhere
+            for (int i = 1; i <= m; i++) {
+                int above = row[i];
+                int cost = pattern[i - 1] == c ? 0 : 1;
+                row[i] = Math.min(Math.min(row[i - 1] + 1, above + 1), diagonal + cost);
+                diagonal = above;
+            }
+            best = Math.min(best, row[m]);
+        }
+        return best <= maxEdits ? best : maxEdits + 1;
+    }
+}
+
+// Scans a note collection in parallel on a ForkJoinPool and keeps the best-scoring matches
+class ParallelNoteScanner {
+
+    static final int DEFAULT_CHUNK_SIZE = 4096; // Below this many notes a chunk is scanned sequentially
+
+    private final ForkJoinPool pool;
+    private final int chunkSize;
+
+    public ParallelNoteScanner() {
+        this(ForkJoinPool.commonPool(), DEFAULT_CHUNK_SIZE);
+    }
+
+    public ParallelNoteScanner(ForkJoinPool pool, int chunkSize) {
+        this.pool = pool;
+        this.chunkSize = Math.max(1, chunkSize);
+    }
+
+    // Returns up to limit matching notes, best score first; ties keep the notes' original order
+    public List<Note> scan(List<Note> notes, NoteMatcher matcher, int limit) {
+        Note[] snapshot = notes.toArray(new Note[0]);
+        int capacity = Math.min(Math.max(limit, 0), snapshot.length);
+        if (capacity == 0) {
+            return new ArrayList<>();
+        }
+        ScanTask task = new ScanTask(snapshot, matcher, capacity, 0, snapshot.length);
+        TopK top = snapshot.length <= chunkSize ? task.compute() : pool.invoke(task);
+        return top.toList(snapshot);
+    }
+
+    private final class ScanTask extends RecursiveTask<TopK> {
+        private static final long serialVersionUID = 1L;
+        private final Note[] notes;
+        private final NoteMatcher matcher;
+        private final int limit;
+        private final int from;
+        private final int to;
+
+        ScanTask(Note[] notes, NoteMatcher matcher, int limit, int from, int to) {
+            this.notes = notes;
+            this.matcher = matcher;
+            this.limit = limit;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected TopK compute() {
+            if (to - from <= chunkSize) {
+                TopK top = new TopK(Math.min(limit, to - from));
+                for (int i = from; i < to; i++) {
+                    int score = matcher.score(notes[i]);
+                    if (score >= 0) {
+                        top.offer(score, i);
+                    }
+                }
+                return top;
+            }
+            int mid = (from + to) >>> 1;
+            ScanTask left = new ScanTask(notes, matcher, limit, from, mid);
+            left.fork();
+            TopK right = new ScanTask(notes, matcher, limit, mid, to).compute();
+            return left.join().merge(right, limit);
+        }
+    }
+
+    // Bounded min-heap of (score, index) pairs packed into longs so collecting matches does not box.
+    // The packing makes a higher score, then a lower index, compare greater.
+    private static final class TopK {
+        private long[] heap;
+        private int size;
+
+        TopK(int capacity) {
+            this.heap = new long[Math.max(capacity, 1)];
+        }
+
+        void offer(int score, int index) {
+            offer(((long) score << 32) | (Integer.MAX_VALUE - index));
+        }
+
+        private void offer(long entry) {
+            if (size < heap.length) {
+                heap[size] = entry;
+                siftUp(size++);
+            } else if (entry > heap[0]) {
+                heap[0] = entry;
+                siftDown(0);
+            }
+        }
+
+        // Combines two chunk results, keeping the best limit entries
+        TopK merge(TopK other, int limit) {
+            TopK into = this;
+            if (heap.length < Math.min(limit, size + other.size)) {
+                into = new TopK(Math.min(limit, size + other.size));
+                for (int i = 0; i < size; i++) {
+                    into.offer(heap[i]);
+                }
+            }
+            for (int i = 0; i < other.size; i++) {
+                into.offer(other.heap[i]);
+            }
+            return into;
+        }
+
+        List<Note> toList(Note[] notes) {
+            long[] entries = Arrays.copyOf(heap, size);
+            Arrays.sort(entries);
+            List<Note> result = new ArrayList<>(size);
+            for (int i = entries.length - 1; i >= 0; i--) {
+                result.add(notes[Integer.MAX_VALUE - (int) entries[i]]);
+            }
+            return result;
+        }
+
+        private void siftUp(int i) {
+            long entry = heap[i];
+            while (i > 0) {
+                int parent = (i - 1) >>> 1;
+                if (heap[parent] <= entry) {
+                    break;
+                }
+                heap[i] = heap[parent];
+                i = parent;
+            }
+            heap[i] = entry;
+        }
+
+        private void siftDown(int i) {
+            long entry = heap[i];
+            int half = size >>> 1;
+            while (i < half) {
+                int child = 2 * i + 1;
+                if (child + 1 < size && heap[child + 1] < heap[child]) {
+                    child++;
+                }
+                if (entry <= heap[child]) {
+                    break;
+                }
+                heap[i] = heap[child];
+                i = child;
+            }
+            heap[i] = entry;
+        }
+    }
+}
+
+// Hybrid logical clock. Stamps carry wall-clock millis in the high bits and a counter in the low 16 bits,
+// so they follow real time, keep increasing when the clock stalls, and never fall behind a stamp seen from a peer.
+final class HybridLogicalClock {
+
+    // Stamps from other instances may run at most this far ahead of the local wall clock. A peer with a
+    // badly set or hostile clock could otherwise make its changes win over every later edit.
+    static final long MAX_DRIFT_MILLIS = 60_000;
+
+    private long last;
+
+    public synchronized long now() {
+        last = Math.max(last + 1, System.currentTimeMillis() << 16);
+        return last;
+    }
+
+    // Moves the clock past a stamp received from another instance, refusing one too far ahead
+    public synchronized void observe(long stamp) {
+        if (!accepts(stamp)) {
+            throw new IllegalArgumentException("Stamp is more than " + MAX_DRIFT_MILLIS + " ms ahead of the local clock");
+        }
+        advanceTo(stamp);
+    }
+
+    // Moves the clock past a stamp from this instance's own data. Not checked for drift, since a saved
+    // file must stay loadable after the wall clock is set back or the file is copied from a fast machine.
+    public synchronized void advanceTo(long stamp) {
+        last = Math.max(last, stamp);
+    }
+
+    public boolean accepts(long stamp) {
+        return stamp >>> 16 <= System.currentTimeMillis() + MAX_DRIFT_MILLIS;
+    }
+}
+
+// Headless, thread-safe store of notes.
+// Readers take an immutable Snapshot with a single volatile read and never block. Writers are serialized
+// on a lock, change copies of the affected notes and publish a new snapshot (copy-on-write), so a note
+// obtained from a snapshot must be treated as read-only.
+// Every local change is stamped with the store's hybrid logical clock and replica id, and deletions leave
+// tombstones, so that instances can be merged last-writer-wins (see NoteSync).
+class NoteStore {
+
+    static final String DEFAULT_DATA_FILE = "notes.dat";
+
+    // Marks a deleted note so the deletion can win over older copies held by other instances
+    static final class Tombstone implements Serializable {
+        private static final long serialVersionUID = 1L;
+        // Stands in for Note.contentHash(); sorts before every note's hash
+        static final String CONTENT_HASH = "";
+        final String id;
+        final long modified;
+        final String origin;
+
+        Tombstone(String id, long modified, String origin) {
+            this.id = id;
+            this.modified = modified;
+            this.origin = origin;
+        }
+    }
+
+    // An immutable view of the store at one point in time
+    static final class Snapshot {
+        private final List<Note> notes; // Insertion order
+        private final Map<String, Note> byId;
+        private final Map<String, List<Note>> byTitle; // Normalized title; titles need not be unique
+        private final Map<String, Tombstone> tombstones;
+
+        private Snapshot(List<Note> notes, Map<String, Note> byId, Map<String, List<Note>> byTitle,
+                         Map<String, Tombstone> tombstones) {
+            this.notes = Collections.unmodifiableList(notes);
+            this.byId = byId;
+            this.byTitle = byTitle;
+            this.tombstones = tombstones;
+        }
+
+        public List<Note> getNotes() {
+            return notes;
+        }
+
+        public int size() {
+            return notes.size();
+        }
+
+        public Note get(String id) {
+            return id == null ? null : byId.get(id);
+        }
+
+        // Finds a note whose title matches exactly, ignoring case and surrounding whitespace
+        public Note findByTitle(String title) {
+            List<Note> matches = byTitle.get(normalizeTitle(title));
+            return matches == null ? null : matches.get(0);
+        }
+
+        public List<String> getCategories() {
+            Set<String> categories = new LinkedHashSet<>();
+            for (Note note : notes) {
+                categories.add(note.getCategory());
+            }
+            return new ArrayList<>(categories);
+        }
+
+        public Collection<Tombstone> getTombstones() {
+            return Collections.unmodifiableCollection(tombstones.values());
+        }
+
+        Tombstone getTombstone(String id) {
+            return tombstones.get(id);
+        }
+    }
+
+    // Mutable copy of a snapshot that a writer edits before publishing it
+    private static final class Draft {
+        private final Snapshot base;
+        private List<Note> notes;
+        private final Map<String, Note> byId;
+        private final Map<String, List<Note>> byTitle;
+        private Map<String, Tombstone> tombstones; // Copied on first change
+        private final Set<String> replaced = new HashSet<>();
+        private final Set<String> removed = new HashSet<>();
+
+        Draft(Snapshot base) {
+            this.base = base;
+            this.byId = new HashMap<>(base.byId);
+            this.byTitle = new HashMap<>(base.byTitle);
+            this.tombstones = base.tombstones;
+        }
+
+        Note get(String id) {
+            return byId.get(id);
+        }
+
+        Tombstone getTombstone(String id) {
+            return tombstones.get(id);
+        }
+
+        // Adds or replaces a note by id, clearing any tombstone for it
+        void put(Note note) {
+            Note previous = byId.put(note.getId(), note);
+            if (previous == null) {
+                if (!removed.remove(note.getId())) {
+                    added().add(note);
+                } else {
+                    replaced.add(note.getId());
+                }
+            } else {
+                unindexTitle(byTitle, previous);
+                replaced.add(note.getId());
+            }
+            indexTitle(byTitle, note);
+            if (tombstones.containsKey(note.getId())) {
+                tombstones().remove(note.getId());
+            }
+        }
+
+        // Removes the note, if present, and records the tombstone
+        void bury(Tombstone tombstone) {
+            Note previous = byId.remove(tombstone.id);
+            if (previous != null) {
+                unindexTitle(byTitle, previous);
+                replaced.remove(tombstone.id);
+                removed.add(tombstone.id);
+            }
+            tombstones().put(tombstone.id, tombstone);
+        }
+
+        Snapshot toSnapshot() {
+            List<Note> result = notes;
+            if (result == null) {
+                result = base.notes;
+            }
+            if (!replaced.isEmpty() || !removed.isEmpty()) {
+                List<Note> rebuilt = new ArrayList<>(result.size());
+                for (Note note : result) {
+                    String id = note.getId();
+                    if (removed.contains(id)) {
+                        continue;
+                    }
+                    // Keep the note's position, take its latest version
+                    rebuilt.add(replaced.contains(id) ? byId.get(id) : note);
+                }
+                result = rebuilt;
+            }
+            return new Snapshot(result, byId, byTitle, tombstones);
+        }
+
+        private List<Note> added() {
+            if (notes == null) {
+                notes = new ArrayList<>(base.notes.size() + 16);
+                notes.addAll(base.notes);
+            }
+            return notes;
+        }
+
+        private Map<String, Tombstone> tombstones() {
+            if (tombstones == base.tombstones) {
+                tombstones = new HashMap<>(base.tombstones);
+            }
+            return tombstones;
+        }
+    }
+
+    private final Path dataFile;
+    private final HybridLogicalClock clock = new HybridLogicalClock();
+    private final String replicaId = UUID.randomUUID().toString(); // Identifies this instance's changes
+    private final Object writeLock = new Object();
+    private final Object saveLock = new Object(); // Saves may overlap with writes, but not with each other
+    private FileLock fileLock; // Held for the life of the process once tryLock succeeds
+    private final List<Runnable> changeListeners = new CopyOnWriteArrayList<>();
+    private volatile Snapshot snapshot;
+
+    public NoteStore() {
+        this(Paths.get(DEFAULT_DATA_FILE));
+    }
+
+    public NoteStore(Path dataFile) {
+        this.dataFile = dataFile;
+        this.snapshot = new Snapshot(new ArrayList<>(), new HashMap<>(), new HashMap<>(), new HashMap<>());
+    }
+
+    public Snapshot snapshot() {
+        return snapshot;
+    }
+
+    public Path getDataFile() {
+        return dataFile;
+    }
+
+    public String getReplicaId() {
+        return replicaId;
+    }
+
+    // Registers a callback run on the writing thread after every published change
+    public void addChangeListener(Runnable listener) {
+        changeListeners.add(listener);
+    }
+
+    public Note add(String title, String content, String category) {
+        Note note = new Note(title, content, category);
+        synchronized (writeLock) {
+            note.stamp(clock.now(), replicaId);
+            putAll(Collections.singletonList(note));
+        }
+        return note;
+    }
+
+    // Adds or replaces (by id) a batch of notes, publishing a single new snapshot for the whole batch.
+    // The notes keep whatever stamps they carry; imports go through importAll instead.
+    public void putAll(Collection<Note> batch) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        synchronized (writeLock) {
+            Draft draft = new Draft(snapshot);
+            for (Note note : batch) {
+                draft.put(note);
+            }
+            publish(draft.toSnapshot());
+        }
+    }
+
+    // Applies imported notes by last-writer-wins and returns how many were applied. Copies identical to the
+    // stored note, and copies older than it or than its tombstone, are skipped. A note without a stamp, or
+    // one whose content differs from a stored copy that is not newer, was edited outside the app: it gets a
+    // fresh local stamp, or sync would never pass the edit on.
+    public int importAll(Collection<Note> batch) {
+        for (Note note : batch) {
+            checkStamp(note.getModified(), note.getId());
+        }
+        synchronized (writeLock) {
+            Draft draft = new Draft(snapshot);
+            int applied = 0;
+            for (Note note : batch) {
+                Note local = draft.get(note.getId());
+                if (local != null && local.contentHash().equals(note.contentHash())) {
+                    continue;
+                }
+                clock.observe(note.getModified());
+                if (note.getModified() == 0 || (local != null && note.getModified() >= local.getModified())) {
+                    note.stamp(clock.now(), replicaId);
+                } else if (!isNewer(note.getModified(), note.getOrigin(), note.contentHash(), draft, note.getId())) {
+                    continue;
+                }
+                draft.put(note);
+                applied++;
+            }
+            if (applied > 0) {
+                publish(draft.toSnapshot());
+            }
+            return applied;
+        }
+    }
+
+    // False if a stamp is too far ahead of the local clock to be merged or imported
+    boolean acceptsStamp(long modified) {
+        return clock.accepts(modified);
+    }
+
+    // Applies mutation to a copy of the note and publishes it. Returns the new note, or null if there is no such note.
+    public Note update(String id, Consumer<Note> mutation) {
+        synchronized (writeLock) {
+            Note original = snapshot.get(id);
+            if (original == null) {
+                return null;
+            }
+            Note copy = new Note(original);
+            mutation.accept(copy);
+            if (copy.getVersion() == original.getVersion()) {
+                return original; // Nothing changed, keep the current snapshot
+            }
+            copy.stamp(clock.now(), replicaId);
+            putAll(Collections.singletonList(copy));
+            return copy;
+        }
+    }
+
+    public boolean delete(String id) {
+        synchronized (writeLock) {
+            if (snapshot.get(id) == null) {
+                return false;
+            }
+            Draft draft = new Draft(snapshot);
+            draft.bury(new Tombstone(id, clock.now(), replicaId));
+            publish(draft.toSnapshot());
+            return true;
+        }
+    }
+
+    // Merges notes and tombstones from another instance. For each id the record with the newest
+    // (stamp, origin) wins, so every instance that has seen the same records ends up in the same state.
+    // Returns how many records were applied.
+    public int merge(Collection<Note> notes, Collection<Tombstone> tombstones) {
+        // Checked up front, so a batch with a stamp from the future is refused as a whole
+        for (Note note : notes) {
+            checkStamp(note.getModified(), note.getId());
+        }
+        for (Tombstone tombstone : tombstones) {
+            checkStamp(tombstone.modified, tombstone.id);
+        }
+        synchronized (writeLock) {
+            Draft draft = new Draft(snapshot);
+            int applied = 0;
+            for (Note note : notes) {
+                clock.observe(note.getModified());
+                if (isNewer(note.getModified(), note.getOrigin(), note.contentHash(), draft, note.getId())) {
+                    draft.put(note);
+                    applied++;
+                }
+            }
+            for (Tombstone tombstone : tombstones) {
+                clock.observe(tombstone.modified);
+                if (isNewer(tombstone.modified, tombstone.origin, Tombstone.CONTENT_HASH, draft, tombstone.id)) {
+                    draft.bury(tombstone);
+                    applied++;
+                }
+            }
+            if (applied > 0) {
+                publish(draft.toSnapshot());
+            }
+            return applied;
+        }
+    }
+
+    private void checkStamp(long modified, String id) {
+        if (!clock.accepts(modified)) {
+            throw new IllegalArgumentException("Change to note " + id + " is stamped more than "
+                    + HybridLogicalClock.MAX_DRIFT_MILLIS + " ms ahead of the local clock");
+        }
+    }
+
+    private static boolean isNewer(long modified, String origin, String hash, Draft draft, String id) {
+        Note local = draft.get(id);
+        if (local != null) {
+            return compareStamps(modified, origin, hash, local.getModified(), local.getOrigin(), local.contentHash()) > 0;
+        }
+        Tombstone buried = draft.getTombstone(id);
+        return buried == null
+                || compareStamps(modified, origin, hash, buried.modified, buried.origin, Tombstone.CONTENT_HASH) > 0;
+    }
+
+    // Orders changes by clock stamp, breaking ties by origin and then by content hash so the order is the
+    // same on every instance, even for copies that share a stamp, such as notes from before stamps existed
+    static int compareStamps(long modified, String origin, String hash,
+                             long otherModified, String otherOrigin, String otherHash) {
+        int byStamp = Long.compare(modified, otherModified);
+        if (byStamp != 0) {
+            return byStamp;
+        }
+        int byOrigin = (origin == null ? "" : origin).compareTo(otherOrigin == null ? "" : otherOrigin);
+        return byOrigin != 0 ? byOrigin : hash.compareTo(otherHash);
+    }
+
+    // Replaces the whole collection, e.g. after loading
+    public void replaceAll(List<Note> notes, Collection<Tombstone> tombstones) {
+        synchronized (writeLock) {
+            Map<String, Note> byId = new HashMap<>(notes.size() * 2);
+            Map<String, List<Note>> byTitle = new HashMap<>(notes.size() * 2);
+            List<Note> unique = new ArrayList<>(notes.size());
+            for (Note note : notes) {
+                if (byId.putIfAbsent(note.getId(), note) == null) {
+                    unique.add(note);
+                    indexTitle(byTitle, note);
+                    clock.advanceTo(note.getModified());
+                }
+            }
+            Map<String, Tombstone> buried = new HashMap<>();
+            for (Tombstone tombstone : tombstones) {
+                buried.put(tombstone.id, tombstone);
+                clock.advanceTo(tombstone.modified);
+            }
+            publish(new Snapshot(unique, byId, byTitle, buried));
+        }
+    }
+
+    // Writes the current snapshot. Runs concurrently with edits; the file is replaced atomically where the
+    // file system allows it. The snapshot is read under saveLock, so the last save to finish writes the newest one.
+    // The note list comes first, so files stay readable by versions that predate tombstones.
+    public void save() throws IOException {
+        synchronized (saveLock) {
+            Snapshot toSave = snapshot;
+            Path parent = dataFile.toAbsolutePath().getParent();
+            Path temp = Files.createTempFile(parent, dataFile.getFileName().toString(), ".tmp");
+            try {
+                try (ObjectOutputStream oos = new ObjectOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+                    oos.writeObject(new ArrayList<>(toSave.notes));
+                    oos.writeObject(new ArrayList<>(toSave.tombstones.values()));
+                }
+                try {
+                    Files.move(temp, dataFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                } catch (AtomicMoveNotSupportedException e) {
+                    Files.move(temp, dataFile, StandardCopyOption.REPLACE_EXISTING);
+                }
+            } finally {
+                Files.deleteIfExists(temp);
+            }
+        }
+    }
+
+    // Takes an exclusive lock on <dataFile>.lock, held until the process exits, so that two processes cannot
+    // load the same file and then save over each other's changes. Returns false if another process holds it.
+    public boolean tryLock() throws IOException {
+        synchronized (saveLock) {
+            if (fileLock != null) {
+                return true;
+            }
+            Path lockFile = dataFile.resolveSibling(dataFile.getFileName() + ".lock");
+            FileChannel channel = FileChannel.open(lockFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+            try {
+                fileLock = channel.tryLock();
+            } catch (OverlappingFileLockException e) {
+                fileLock = null; // Held by another store in this process
+            }
+            if (fileLock == null) {
+                channel.close();
+                return false;
+            }
+            return true;
+        }
+    }
+
+    // Loads the data file if there is one. Returns false when no file exists yet.
+    // A damaged file can fail with a runtime exception (a bad cast, a bad field); that is reported as an IOException.
+    @SuppressWarnings("unchecked") // Suppress unchecked cast warning
+    public boolean load() throws IOException, ClassNotFoundException {
+        if (!Files.exists(dataFile)) {
+            return false;
+        }
+        try (ObjectInputStream ois = new ObjectInputStream(new BufferedInputStream(Files.newInputStream(dataFile)))) {
+            List<Note> notes = (List<Note>) ois.readObject();
+            List<Tombstone> tombstones;
+            try {
+                tombstones = (List<Tombstone>) ois.readObject();
+            } catch (EOFException e) {
+                tombstones = Collections.emptyList(); // Written before tombstones existed
+            }
+            replaceAll(notes, tombstones);
+        } catch (RuntimeException e) {
+            throw new IOException("Unreadable notes file " + dataFile + ": " + e, e);
+        }
+        return true;
+    }
+
+    private void publish(Snapshot next) {
+        snapshot = next;
+        for (Runnable listener : changeListeners) {
+            listener.run();
+        }
+    }
+
+    // Title lists are shared between snapshots, so they are replaced rather than modified
+    private static void indexTitle(Map<String, List<Note>> byTitle, Note note) {
+        String key = normalizeTitle(note.getTitle());
+        List<Note> sameTitle = byTitle.get(key);
+        if (sameTitle == null) {
+            byTitle.put(key, Collections.singletonList(note));
+        } else {
+            List<Note> grown = new ArrayList<>(sameTitle.size() + 1);
+            grown.addAll(sameTitle);
+            grown.add(note);
+            byTitle.put(key, Collections.unmodifiableList(grown));
+        }
+    }
+
+    private static void unindexTitle(Map<String, List<Note>> byTitle, Note note) {
+        String key = normalizeTitle(note.getTitle());
+        List<Note> sameTitle = byTitle.get(key);
+        if (sameTitle != null && sameTitle.contains(note)) {
+            if (sameTitle.size() == 1) {
+                byTitle.remove(key);
+            } else {
+                List<Note> shrunk = new ArrayList<>(sameTitle);
+                shrunk.remove(note);
+                byTitle.put(key, Collections.unmodifiableList(shrunk));
+            }
+        }
+    }
+
+    static String normalizeTitle(String title) {
+        return title == null ? "" : title.trim().toLowerCase(Locale.ROOT);
     }
 }
 
-// Class to manage the collection of notes
+// Class to manage the collection of notes.
+// This is the Swing front end of a NoteStore: it renders notes and keeps the category list current.
 class NoteManager implements Serializable {
 
     private static final long serialVersionUID = 1L;
-    private List<Note> notes;
+    private transient NoteStore store; // Headless, thread-safe note data
     private transient JTextPane displayArea;  // Use transient to prevent serialization issues with GUI components
     private transient JComboBox<String> categoryComboBox; // Transient for ComboBox
-    private static final String DATA_FILE = "notes.dat";
+    private transient HtmlRenderCache htmlCache; // Rendered note fragments, rebuilt on demand
+    private transient ParallelNoteScanner scanner; // Parallel engine for full scans
+    static final int MAX_RENDERED_RESULTS = 200; // Rendering more than this in a JTextPane stalls the EDT
+    private static final String SEARCH_STATUS_ID = "search-status";
+    private static final String SEARCH_RESULTS_ID = "search-results";
 
     public NoteManager() {
-        this.notes = new ArrayList<>();
+        this(new NoteStore());
+    }
+
+    public NoteManager(NoteStore store) {
+        this.store = store;
         this.displayArea = new JTextPane();
         this.categoryComboBox = new JComboBox<>();
+        this.htmlCache = new HtmlRenderCache();
+        this.scanner = new ParallelNoteScanner();
         loadNotes(); // Load notes from file when NoteManager is initialized
+        // Changes may come from other threads (imports, sync); the combo box is only touched on the EDT
+        store.addChangeListener(() -> SwingUtilities.invokeLater(this::loadCategories));
+    }
+
+    public NoteStore getStore() {
+        return store;
     }
 
     // Method to set the display area
@@ -116,50 +1354,60 @@ class NoteManager implements Serializable {
     }
 
     // Method to add a new note
-    public void addNote(String title, String content, String category) {
-        Note newNote = new Note(title, content, category);
-        notes.add(newNote);
+    public Note addNote(String title, String content, String category) {
+        Note newNote = store.add(title, content, category);
         saveNotes(); // Save notes to file after adding
-        loadCategories(); //update categories
+        return newNote;
+    }
+
+    // Method to look up a note by its id
+    public Note getNote(String id) {
+        return store.snapshot().get(id);
+    }
+
+    // Method to find a note whose title matches exactly, ignoring case and surrounding whitespace
+    public Note findNoteByTitle(String title) {
+        return store.snapshot().findByTitle(title);
     }
 
     // Method to edit an existing note
-    public void editNote(int index, String newTitle, String newContent, String newCategory) {
-        if (index >= 0 && index < notes.size()) {
-            Note note = notes.get(index);
-            note.setTitle(newTitle);
-            note.setContent(newContent);
-            note.setCategory(newCategory); //update category
+    public void editNote(String id, String newTitle, String newContent, String newCategory) {
+        Note note = store.update(id, n -> {
+            n.setTitle(newTitle);
+            n.setContent(newContent);
+            n.setCategory(newCategory); //update category
+        });
+        if (note != null) {
+            htmlCache.invalidate(id);
             saveNotes();  // Save changes to file
-            loadCategories();
         } else {
-            displayArea.setText("Invalid note index.");
+            displayArea.setText("Note not found.");
         }
     }
 
     // Method to delete a note
-    public void deleteNote(int index) {
-        if (index >= 0 && index < notes.size()) {
-            notes.remove(index);
+    public void deleteNote(String id) {
+        if (store.delete(id)) {
+            htmlCache.invalidate(id);
             saveNotes(); // Save changes to file
-            loadCategories();
         } else {
-            displayArea.setText("Invalid note index.");
+            displayArea.setText("Note not found.");
         }
     }
 
     // Method to display a single note
-    public void displayNote(int index) {
-        if (index >= 0 && index < notes.size()) {
-            Note note = notes.get(index);
+    public void displayNote(String id) {
+        Note note = getNote(id);
+        if (note != null) {
             displayArea.setText(generateHTMLContent(note)); //use html to display
         } else {
-            displayArea.setText("Invalid note index.");
+            displayArea.setText("Note not found.");
         }
     }
 
     // Method to display all notes
     public void displayAllNotes() {
+        List<Note> notes = store.snapshot().getNotes();
         if (notes.isEmpty()) {
             displayArea.setText("No notes available.");
         } else {
@@ -170,38 +1418,109 @@ class NoteManager implements Serializable {
                 sb.append("<hr>"); // Add a horizontal line between notes
             }
             displayArea.setText(sb.toString());
+            Logger.getLogger(NoteManager.class.getName()).log(Level.INFO, "Rendered all notes: {0}", htmlCache);
         }
     }
 
-    // Method to search notes by title or content
+    // Method to search notes by title or content; title matches come first
    public List<Note> searchNotes(String query) {
-        List<Note> matchingNotes = new ArrayList<>();
-        for (Note note : notes) {
-            if (note.getTitle().toLowerCase().contains(query.toLowerCase())
-                    || note.getContent().toLowerCase().contains(query.toLowerCase())) {
-                matchingNotes.add(note);
+        return searchNotes(NoteMatcher.containsIgnoreCase(query), Integer.MAX_VALUE);
+    }
+
+    // Method to search with any matcher (regex, fuzzy, phrase), returning the best limit matches
+    public List<Note> searchNotes(NoteMatcher matcher, int limit) {
+        return scanner.scan(store.snapshot().getNotes(), matcher, limit);
+    }
+
+    // Method to get the current notes; the list is an immutable snapshot that is safe to scan on any thread
+    public List<Note> getNotesSnapshot() {
+        return store.snapshot().getNotes();
+    }
+
+    // Method to display (possibly partial) search results, rendering at most MAX_RENDERED_RESULTS notes.
+    // The status line and the result list carry ids, so a running search can grow the page in place.
+    public void displaySearchResults(List<Note> results, int matchCount, boolean complete) {
+        if (results.isEmpty()) {
+            displayArea.setText(complete ? "No notes found matching the query." : "Searching...");
+            return;
+        }
+        StringBuilder sb = new StringBuilder();
+        sb.append("<p id='").append(SEARCH_STATUS_ID).append("' style='color: #888;'>")
+                .append(searchStatus(matchCount, results.size(), complete)).append("</p>");
+        sb.append("<div id='").append(SEARCH_RESULTS_ID).append("'>");
+        appendFragments(sb, results);
+        sb.append("</div>");
+        displayArea.setText(sb.toString());
+    }
+
+    // Method to add results to the page displaySearchResults started, parsing only the new notes' HTML.
+    // Re-rendering the whole page on every chunk meant re-parsing hundreds of KB per frame on large notes.
+    public void appendSearchResults(List<Note> added, int matchCount, int shownCount) {
+        HTMLDocument document = (HTMLDocument) displayArea.getDocument();
+        Element results = document.getElement(SEARCH_RESULTS_ID);
+        if (results == null) {
+            return; // Another view replaced the page
+        }
+        try {
+            if (!added.isEmpty()) {
+                StringBuilder sb = new StringBuilder();
+                appendFragments(sb, added);
+                document.insertBeforeEnd(results, sb.toString());
             }
+            updateSearchStatus(matchCount, shownCount, false);
+        } catch (BadLocationException | IOException e) {
+            Logger.getLogger(NoteManager.class.getName()).log(Level.SEVERE, "Error showing search results: ", e);
+        }
+    }
+
+    // Method to rewrite only the status line above the results
+    public void updateSearchStatus(int matchCount, int shownCount, boolean complete) {
+        HTMLDocument document = (HTMLDocument) displayArea.getDocument();
+        Element status = document.getElement(SEARCH_STATUS_ID);
+        if (status == null) {
+            return;
+        }
+        try {
+            document.setInnerHTML(status, searchStatus(matchCount, shownCount, complete));
+        } catch (BadLocationException | IOException e) {
+            Logger.getLogger(NoteManager.class.getName()).log(Level.SEVERE, "Error showing search status: ", e);
+        }
+    }
+
+    private static String searchStatus(int matchCount, int shownCount, boolean complete) {
+        String status = matchCount + (matchCount == 1 ? " match" : " matches");
+        if (!complete) {
+            return status + " so far, still searching...";
+        }
+        return matchCount > shownCount ? status + ", showing the first " + shownCount : status;
+    }
+
+    private void appendFragments(StringBuilder sb, List<Note> notes) {
+        for (Note note : notes) {
+            sb.append(generateHTMLContent(note));
+            sb.append("<hr>");
         }
-        return matchingNotes;
     }
 
     // Method to add a tag to a note
-    public void addTagToNote(int index, String tag) {
-        if (index >= 0 && index < notes.size()) {
-            notes.get(index).addTag(tag);
+    public void addTagToNote(String id, String tag) {
+        Note note = store.update(id, n -> n.addTag(tag));
+        if (note != null) {
+            htmlCache.invalidate(id);
             saveNotes(); // Save changes
         } else {
-            displayArea.setText("Invalid note index.");
+            displayArea.setText("Note not found.");
         }
     }
 
     // Method to remove a tag from a note
-    public void removeTagFromNote(int index, String tag) {
-        if (index >= 0 && index < notes.size()) {
-            notes.get(index).removeTag(tag);
+    public void removeTagFromNote(String id, String tag) {
+        Note note = store.update(id, n -> n.removeTag(tag));
+        if (note != null) {
+            htmlCache.invalidate(id);
             saveNotes(); // Save changes
         } else {
-            displayArea.setText("Invalid note index.");
+            displayArea.setText("Note not found.");
         }
     }
 
@@ -209,8 +1528,8 @@ class NoteManager implements Serializable {
     public void displayNotesByTag(String tag) {
         StringBuilder sb = new StringBuilder();
         boolean found = false;
-        for (Note note : notes) {
-            if (note.getTags().contains(tag)) {
+        for (Note note : store.snapshot().getNotes()) {
+            if (note.hasTag(tag)) {
                 sb.append(generateHTMLContent(note));
                 sb.append("<hr>");
                 found = true;
@@ -227,7 +1546,7 @@ class NoteManager implements Serializable {
     public void displayNotesByCategory(String category) {
         StringBuilder sb = new StringBuilder();
         boolean found = false;
-        for (Note note : notes) {
+        for (Note note : store.snapshot().getNotes()) {
             if (note.getCategory().equalsIgnoreCase(category)) {
                 sb.append(generateHTMLContent(note));
                 sb.append("<hr>");
@@ -243,11 +1562,7 @@ class NoteManager implements Serializable {
 
     // Method to get all unique categories
     public List<String> getAllCategories() {
-        Set<String> categories = new HashSet<>();
-        for (Note note : notes) {
-            categories.add(note.getCategory());
-        }
-        return new ArrayList<>(categories);
+        return store.snapshot().getCategories();
     }
 
     // Method to load categories into the ComboBox
@@ -261,8 +1576,8 @@ class NoteManager implements Serializable {
 
     // Method to save notes to a file
     private void saveNotes() {
-        try (ObjectOutputStream oos = new ObjectOutputStream(new FileOutputStream(DATA_FILE))) {
-            oos.writeObject(notes);
+        try {
+            store.save();
         } catch (IOException e) {
             Logger.getLogger(NoteManager.class.getName()).log(Level.SEVERE, "Error saving notes: ", e);
             displayArea.setText("Error saving notes to file.");
@@ -270,30 +1585,45 @@ class NoteManager implements Serializable {
     }
 
     // Method to load notes from a file
-    @SuppressWarnings("unchecked") // Suppress unchecked cast warning
     private void loadNotes() {
-        File file = new File(DATA_FILE);
-        if (file.exists()) {
-            try (ObjectInputStream ois = new ObjectInputStream(new FileInputStream(DATA_FILE))) {
-                notes = (List<Note>) ois.readObject();
-            } catch (IOException | ClassNotFoundException e) {
-                Logger.getLogger(NoteManager.class.getName()).log(Level.SEVERE, "Error loading notes: ", e);
-                displayArea.setText("Error loading notes from file. Creating a new note list.");
-                notes = new ArrayList<>(); // Initialize to avoid NullPointerException
-            }        } else {
-             System.out.println("No existing note file found. Starting with an empty note list.");
-             notes = new ArrayList<>();
-        }
-    }
-
-    //helper method to generate html
-    private String generateHTMLContent(Note note){
+        try {
+            if (!store.load()) {
+                System.out.println("No existing note file found. Starting with an empty note list.");
+            }
+        } catch (IOException | ClassNotFoundException | RuntimeException e) {
+            Logger.getLogger(NoteManager.class.getName()).log(Level.SEVERE, "Error loading notes: ", e);
+            displayArea.setText("Error loading notes from file. Creating a new note list.");
+        }
+    }
+
+    // Method to report how well the rendered-HTML cache is doing
+    public String getHtmlCacheStats() {
+        return htmlCache.toString();
+    }
+
+    public void clearHtmlCache() {
+        htmlCache.clear();
+    }
+
+    //helper method to generate html, served from the render cache when the note is unchanged
+    String generateHTMLContent(Note note) {
+        String cached = htmlCache.get(note);
+        if (cached != null) {
+            return cached;
+        }
+        String html = renderHTMLContent(note);
+        htmlCache.put(note, html);
+        return html;
+    }
+
+    private String renderHTMLContent(Note note){
         StringBuilder sb = new StringBuilder();
-        sb.append("<html><body style='font-family: Arial, sans-serif; margin: 10px;'>");
+        // A fragment, not a whole document: list views concatenate fragments, and the HTML parser
+        // drops everything after the first closing </html>
+        sb.append("<div style='font-family: Arial, sans-serif; margin: 10px;'>");
         sb.append("<h1 style='color: #333;'>").append(note.getTitle()).append("</h1>");
         sb.append("<p style='color: #666;'>Category: <span style='font-weight: bold;'>").append(note.getCategory()).append("</span></p>");
-        DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
-        sb.append("<p style='color: #888;'>Created: ").append(note.getCreationDate().format(formatter)).append("</p>");
+        sb.append("<p style='color: #888;'>Created: ").append(note.getCreationDate().format(Note.DATE_FORMATTER)).append("</p>");
         sb.append("<p style='color: #666;'>Tags: ");
         if (note.getTags().isEmpty()) {
             sb.append("<span style='font-style: italic;'>No tags</span>");
@@ -310,7 +1640,7 @@ class NoteManager implements Serializable {
         content = content.replace("\n", "<br>");
 
         sb.append("<div style='margin-top: 10px; line-height: 1.5;'>").append(content).append("</div>");
-        sb.append("</body></html>");
+        sb.append("</div>");
         return sb.toString();
     }
 
@@ -334,6 +1664,123 @@ class NoteManager implements Serializable {
     }
 }
 
+// Background search that streams matches to the display as they are found.
+// Matches are queued and rendered by a frame timer, at most RENDER_CHARS_PER_FRAME of note text per tick,
+// so a burst of large notes is spread over several frames instead of blocking the EDT in one.
+class IncrementalSearchWorker extends SwingWorker<Integer, Note> {
+
+    private static final int FRAME_MILLIS = 16; // One frame at 60 fps
+    private static final int RENDER_CHARS_PER_FRAME = 12 * 1024;
+
+    private final NoteManager noteManager;
+    private final List<Note> snapshot;
+    private final NoteMatcher matcher;
+    // The fields below are only touched on the EDT
+    private final Deque<Note> pending = new ArrayDeque<>(); // Matches to show that are not rendered yet
+    private final Timer frameTimer = new Timer(FRAME_MILLIS, e -> renderFrame());
+    private int queued; // Matches accepted for display, rendered or pending
+    private int rendered;
+    private int matchCount;
+    private Integer total; // Set once the scan has finished
+
+    // Must be created on the EDT, since it snapshots the note list
+    public IncrementalSearchWorker(NoteManager noteManager, String query) {
+        this.noteManager = noteManager;
+        this.snapshot = noteManager.getNotesSnapshot();
+        this.matcher = NoteMatcher.containsIgnoreCase(query);
+        this.frameTimer.setInitialDelay(0);
+    }
+
+    @Override
+    protected Integer doInBackground() {
+        int found = 0;
+        for (Note note : snapshot) {
+            // A newer keystroke cancels this worker; stop scanning as soon as it does
+            if (isCancelled()) {
+                return found;
+            }
+            if (matcher.score(note) != NoteMatcher.NO_MATCH) {
+                found++;
+                publish(note);
+            }
+        }
+        return found;
+    }
+
+    @Override
+    protected void process(List<Note> chunk) {
+        if (isCancelled()) {
+            return;
+        }
+        for (Note note : chunk) {
+            matchCount++;
+            if (queued < NoteManager.MAX_RENDERED_RESULTS) {
+                pending.add(note);
+                queued++;
+            }
+        }
+        frameTimer.start(); // No-op while it is already running
+    }
+
+    @Override
+    protected void done() {
+        if (isCancelled()) {
+            frameTimer.stop();
+            return;
+        }
+        try {
+            total = get();
+        } catch (Exception e) {
+            frameTimer.stop();
+            Logger.getLogger(IncrementalSearchWorker.class.getName()).log(Level.SEVERE, "Search failed: ", e);
+            return;
+        }
+        if (pending.isEmpty()) {
+            showFinalStatus();
+        } // Otherwise the frame timer shows it once the queue is drained
+    }
+
+    // One timer tick: renders the next frame's worth of queued matches, or just refreshes the match count
+    private void renderFrame() {
+        if (isCancelled()) {
+            frameTimer.stop();
+            return;
+        }
+        List<Note> batch = new ArrayList<>();
+        int chars = 0;
+        while (!pending.isEmpty() && (batch.isEmpty() || chars < RENDER_CHARS_PER_FRAME)) {
+            Note note = pending.poll();
+            batch.add(note);
+            chars += note.getContent().length();
+        }
+        if (!batch.isEmpty()) {
+            // The first matches start the page; later ones are appended, so each frame parses only its own HTML
+            if (rendered == 0) {
+                noteManager.displaySearchResults(batch, matchCount, false);
+            } else {
+                noteManager.appendSearchResults(batch, matchCount, rendered + batch.size());
+            }
+            rendered += batch.size();
+        } else if (rendered > 0) {
+            noteManager.updateSearchStatus(matchCount, rendered, false);
+        }
+        if (pending.isEmpty()) {
+            frameTimer.stop();
+            if (total != null) {
+                showFinalStatus();
+            }
+        }
+    }
+
+    private void showFinalStatus() {
+        if (rendered == 0) {
+            noteManager.displaySearchResults(Collections.emptyList(), total, true);
+        } else {
+            noteManager.updateSearchStatus(total, rendered, true);
+        }
+    }
+}
+
 // Main class for the application
 public class AdvancedNoteTaker {
 
@@ -345,7 +1792,15 @@ public class AdvancedNoteTaker {
     private static JTextField tagField;
     private static JTextField searchField;
     private static JComboBox<String> categoryComboBox; // Added ComboBox
-    private static int currentNoteIndex = -1; // To keep track of the currently displayed note
+    private static String currentNoteId = null; // Id of the currently displayed note, null if none
+    private static final int SEARCH_DEBOUNCE_MS = 250; // Wait for typing to pause before searching
+    private static Timer searchDebounceTimer;
+    private static IncrementalSearchWorker searchWorker; // The in-flight search, if any
+    // Run with -Dnotesync.port=<port> to answer NoteSync peers from this instance (loopback only unless
+    // -Dnotesync.bind=<address> is also given). Sync Now connects to such a server as a client.
+    private static final String SYNC_PORT_PROPERTY = "notesync.port";
+    private static final String SYNC_BIND_PROPERTY = "notesync.bind";
+    private static String lastSyncPeer = "localhost:";
 
     public static void main(String[] args) {
         // Set up the GUI on the Event Dispatch Thread
@@ -368,8 +1823,21 @@ public class AdvancedNoteTaker {
         frame.setSize(800, 600);
         frame.setLocationRelativeTo(null); // Center the frame
 
-        // Initialize the NoteManager
-        noteManager = new NoteManager();
+        // Initialize the NoteManager, unless another process already has the notes file open
+        NoteStore store = new NoteStore();
+        try {
+            if (!store.tryLock()) {
+                JOptionPane.showMessageDialog(null,
+                        "The notes file is in use by another Note Taker, NoteSync or NoteTransfer process. Close it and try again.",
+                        "Notes File In Use", JOptionPane.ERROR_MESSAGE);
+                frame.dispose();
+                return;
+            }
+        } catch (IOException e) {
+            Logger.getLogger(AdvancedNoteTaker.class.getName()).log(Level.WARNING, "Could not lock the notes file: ", e);
+        }
+        noteManager = new NoteManager(store);
+        startSyncServer();
 
         // Main panel
         JPanel mainPanel = new JPanel(new BorderLayout());
@@ -428,6 +1896,7 @@ public class AdvancedNoteTaker {
         JButton addTagButton = new JButton("Add Tag");
         JButton removeTagButton = new JButton("Remove Tag");
         JButton viewByCategoryButton = new JButton("View by Category");
+        JButton syncButton = new JButton("Sync Now");
 
         topPanel.add(addButton);
         topPanel.add(editButton);
@@ -438,6 +1907,7 @@ public class AdvancedNoteTaker {
         topPanel.add(addTagButton);
         topPanel.add(removeTagButton);
         topPanel.add(viewByCategoryButton);
+        topPanel.add(syncButton);
 
         // Add components to the main panel
         mainPanel.add(topPanel, BorderLayout.NORTH);
@@ -461,6 +1931,7 @@ public class AdvancedNoteTaker {
                 }
                 noteManager.addNote(title, content, category);
                 clearInputFields();
+                stopSearch();
                 displayArea.setText("Note added successfully.");
             }
         });
@@ -468,7 +1939,7 @@ public class AdvancedNoteTaker {
         editButton.addActionListener(new ActionListener() {
             @Override
             public void actionPerformed(ActionEvent e) {
-                if (currentNoteIndex == -1) {
+                if (currentNoteId == null) {
                     JOptionPane.showMessageDialog(frame, "Please select a note to edit by viewing it first.", "No Note Selected", JOptionPane.WARNING_MESSAGE);
                     return;
                 }
@@ -480,26 +1951,28 @@ public class AdvancedNoteTaker {
                     JOptionPane.showMessageDialog(frame, "Please enter both title and content.", "Input Required", JOptionPane.WARNING_MESSAGE);
                     return;
                 }
-                noteManager.editNote(currentNoteIndex, newTitle, newContent, newCategory);
+                noteManager.editNote(currentNoteId, newTitle, newContent, newCategory);
                 clearInputFields();
+                stopSearch();
                 displayArea.setText("Note edited successfully.");
-                currentNoteIndex = -1; // Reset
+                currentNoteId = null; // Reset
             }
         });
 
         deleteButton.addActionListener(new ActionListener() {
             @Override
             public void actionPerformed(ActionEvent e) {
-                if (currentNoteIndex == -1) {
+                if (currentNoteId == null) {
                     JOptionPane.showMessageDialog(frame, "Please select a note to delete by viewing it first.", "No Note Selected", JOptionPane.WARNING_MESSAGE);
                     return;
                 }
                 int choice = JOptionPane.showConfirmDialog(frame, "Are you sure you want to delete this note?", "Confirm Delete", JOptionPane.YES_NO_OPTION);
                 if (choice == JOptionPane.YES_OPTION) {
-                    noteManager.deleteNote(currentNoteIndex);
+                    noteManager.deleteNote(currentNoteId);
                     clearInputFields();
+                    stopSearch();
                     displayArea.setText("Note deleted successfully.");
-                    currentNoteIndex = -1; // Reset
+                    currentNoteId = null; // Reset
                 }
             }
         });
@@ -512,18 +1985,14 @@ public class AdvancedNoteTaker {
                     JOptionPane.showMessageDialog(frame, "Please enter the title of the note to view.", "Input Required", JOptionPane.WARNING_MESSAGE);
                     return;
                 }
-                boolean found = false;
-                for (int i = 0; i < noteManager.searchNotes(title).size(); i++) {
-                    if (noteManager.searchNotes(title).get(i).getTitle().equalsIgnoreCase(title)) {
-                        noteManager.displayNote(i);
-                        currentNoteIndex = i; // Store the index of the displayed note
-                        found = true;
-                        break;
-                    }
-                }
-                if (!found) {
+                Note note = noteManager.findNoteByTitle(title);
+                if (note != null) {
+                    stopSearch();
+                    noteManager.displayNote(note.getId());
+                    currentNoteId = note.getId(); // Store the id of the displayed note
+                } else {
                     JOptionPane.showMessageDialog(frame, "Note not found.", "Note Not Found", JOptionPane.INFORMATION_MESSAGE);
-                    currentNoteIndex = -1;
+                    currentNoteId = null;
                 }
             }
         });
@@ -531,8 +2000,9 @@ public class AdvancedNoteTaker {
         viewAllButton.addActionListener(new ActionListener() {
             @Override
             public void actionPerformed(ActionEvent e) {
+                stopSearch();
                 noteManager.displayAllNotes();
-                currentNoteIndex = -1; // Reset
+                currentNoteId = null; // Reset
             }
         });
 
@@ -544,26 +2014,42 @@ public class AdvancedNoteTaker {
                     JOptionPane.showMessageDialog(frame, "Please enter a search query.", "Input Required", JOptionPane.WARNING_MESSAGE);
                     return;
                 }
-                List<Note> results = noteManager.searchNotes(query);
-                if (results.isEmpty()) {
-                    displayArea.setText("No notes found matching the query.");
-                    currentNoteIndex = -1;
-                } else {
-                    StringBuilder sb = new StringBuilder();
-                    for (Note note : results) {
-                        sb.append(generateHTMLContent(note));
-                        sb.append("<hr>");
-                    }
-                    displayArea.setText(sb.toString());
-                    currentNoteIndex = -1;
-                }
+                stopSearch();
+                startSearch(query);
+            }
+        });
+
+        // Search as you type: every edit restarts the debounce timer, which then starts a fresh search
+        searchDebounceTimer = new Timer(SEARCH_DEBOUNCE_MS, e -> {
+            String query = searchField.getText().trim();
+            if (query.isEmpty()) {
+                cancelSearch();
+            } else {
+                startSearch(query);
+            }
+        });
+        searchDebounceTimer.setRepeats(false);
+        searchField.getDocument().addDocumentListener(new DocumentListener() {
+            @Override
+            public void insertUpdate(DocumentEvent e) {
+                searchDebounceTimer.restart();
+            }
+
+            @Override
+            public void removeUpdate(DocumentEvent e) {
+                searchDebounceTimer.restart();
+            }
+
+            @Override
+            public void changedUpdate(DocumentEvent e) {
+                // Attribute changes do not affect the query
             }
         });
 
         addTagButton.addActionListener(new ActionListener() {
             @Override
             public void actionPerformed(ActionEvent e) {
-                if (currentNoteIndex == -1) {
+                if (currentNoteId == null) {
                     JOptionPane.showMessageDialog(frame, "Please select a note to add a tag to by viewing it first.", "No Note Selected", JOptionPane.WARNING_MESSAGE);
                     return;
                 }
@@ -572,8 +2058,9 @@ public class AdvancedNoteTaker {
                     JOptionPane.showMessageDialog(frame, "Please enter a tag to add.", "Input Required", JOptionPane.WARNING_MESSAGE);
                     return;
                 }
-                noteManager.addTagToNote(currentNoteIndex, tag);
-                displayNote(currentNoteIndex); //refresh display
+                noteManager.addTagToNote(currentNoteId, tag);
+                stopSearch();
+                noteManager.displayNote(currentNoteId); //refresh display
                 tagField.setText("");
             }
         });
@@ -581,7 +2068,7 @@ public class AdvancedNoteTaker {
         removeTagButton.addActionListener(new ActionListener() {
             @Override
             public void actionPerformed(ActionEvent e) {
-                if (currentNoteIndex == -1) {
+                if (currentNoteId == null) {
                     JOptionPane.showMessageDialog(frame, "Please select a note to remove a tag from by viewing it first.", "No Note Selected", JOptionPane.WARNING_MESSAGE);
                     return;
                 }
@@ -590,8 +2077,9 @@ public class AdvancedNoteTaker {
                     JOptionPane.showMessageDialog(frame, "Please enter a tag to remove.", "Input Required", JOptionPane.WARNING_MESSAGE);
                     return;
                 }
-                noteManager.removeTagFromNote(currentNoteIndex, tag);
-                displayNote(currentNoteIndex); //refresh
+                noteManager.removeTagFromNote(currentNoteId, tag);
+                stopSearch();
+                noteManager.displayNote(currentNoteId); //refresh
                 tagField.setText("");
             }
         });
@@ -604,8 +2092,53 @@ public class AdvancedNoteTaker {
                     JOptionPane.showMessageDialog(frame, "Please select a category to view.", "Input Required", JOptionPane.WARNING_MESSAGE);
                     return;
                 }
+                stopSearch();
                 noteManager.displayNotesByCategory(category);
-                currentNoteIndex = -1;
+                currentNoteId = null;
+            }
+        });
+
+        syncButton.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                String peer = (String) JOptionPane.showInputDialog(frame, "Sync with (host:port):", "Sync Now",
+                        JOptionPane.QUESTION_MESSAGE, null, null, lastSyncPeer);
+                if (peer == null || peer.trim().isEmpty()) {
+                    return;
+                }
+                peer = peer.trim();
+                int colon = peer.lastIndexOf(':');
+                int port;
+                try {
+                    port = Integer.parseInt(peer.substring(colon + 1));
+                } catch (NumberFormatException ex) {
+                    JOptionPane.showMessageDialog(frame, "Please enter the peer as host:port.", "Input Required", JOptionPane.WARNING_MESSAGE);
+                    return;
+                }
+                lastSyncPeer = peer;
+                String host = colon > 0 ? peer.substring(0, colon) : "localhost";
+                syncButton.setEnabled(false);
+                new SwingWorker<NoteSync.Result, Void>() {
+                    @Override
+                    protected NoteSync.Result doInBackground() throws Exception {
+                        return NoteSync.syncWith(noteManager.getStore(), host, port, NoteSync.loadIdentity(), NoteSync.trustedKeys());
+                    }
+
+                    @Override
+                    protected void done() {
+                        syncButton.setEnabled(true);
+                        try {
+                            NoteSync.Result result = get();
+                            stopSearch();
+                            displayArea.setText("Synchronized with " + host + ": " + result);
+                            currentNoteId = null;
+                        } catch (Exception ex) {
+                            Throwable cause = ex.getCause() != null ? ex.getCause() : ex;
+                            Logger.getLogger(AdvancedNoteTaker.class.getName()).log(Level.SEVERE, "Sync failed: ", cause);
+                            JOptionPane.showMessageDialog(frame, "Sync failed: " + cause.getMessage(), "Sync Error", JOptionPane.ERROR_MESSAGE);
+                        }
+                    }
+                }.execute();
             }
         });
 
@@ -613,6 +2146,46 @@ public class AdvancedNoteTaker {
         frame.setVisible(true);
     }
 
+    // Method to answer sync peers from this instance's store on a background thread, if a port is configured
+    private static void startSyncServer() {
+        Integer port = Integer.getInteger(SYNC_PORT_PROPERTY);
+        if (port == null) {
+            return;
+        }
+        Thread server = new Thread(() -> {
+            try {
+                String bind = System.getProperty(SYNC_BIND_PROPERTY);
+                InetAddress bindAddress = bind == null ? InetAddress.getLoopbackAddress() : InetAddress.getByName(bind);
+                NoteSync.serve(noteManager.getStore(), bindAddress, port, NoteSync.loadIdentity(), NoteSync.trustedKeys());
+            } catch (IOException | GeneralSecurityException e) {
+                Logger.getLogger(AdvancedNoteTaker.class.getName()).log(Level.SEVERE, "Sync server stopped: ", e);
+            }
+        }, "note-sync-server");
+        server.setDaemon(true);
+        server.start();
+    }
+
+    // Method to run a search in the background, replacing any search still in progress
+    private static void startSearch(String query) {
+        cancelSearch();
+        currentNoteId = null;
+        searchWorker = new IncrementalSearchWorker(noteManager, query);
+        searchWorker.execute();
+    }
+
+    private static void cancelSearch() {
+        if (searchWorker != null) {
+            searchWorker.cancel(false);
+            searchWorker = null;
+        }
+    }
+
+    // Method to drop any pending or running search, so its results cannot replace a view shown after it
+    private static void stopSearch() {
+        searchDebounceTimer.stop();
+        cancelSearch();
+    }
+
     // Method to clear input fields
     private static void clearInputFields() {
         titleField.setText("");
@@ -0,0 +1,516 @@
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Function;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+// Streaming bulk import and export of notes, as JSON Lines or as a directory of Markdown files.
+// Input is read in fixed-size batches: each batch is parsed in parallel while the next one is read, then
+// applied to the store as one mutation, so memory use does not grow with the size of the input.
+// Usage: java NoteTransfer (import|export) <file.jsonl|directory> [dataFile]
+class NoteTransfer {
+
+    static final int BATCH_SIZE = 8192;
+
+    // Ids become file names on export, so imported ids are limited to the characters a UUID uses
+    private static final Pattern ID_PATTERN = Pattern.compile("[A-Za-z0-9-]{1,64}");
+
+    private final NoteStore store;
+
+    public NoteTransfer(NoteStore store) {
+        this.store = store;
+    }
+
+    public static void main(String[] args) {
+        if (args.length < 2 || !(args[0].equals("import") || args[0].equals("export"))) {
+            System.out.println("Usage: java NoteTransfer (import|export) <file.jsonl|directory> [dataFile]");
+            return;
+        }
+        Path target = Paths.get(args[1]);
+        NoteStore store = new NoteStore(Paths.get(args.length > 2 ? args[2] : NoteStore.DEFAULT_DATA_FILE));
+        NoteTransfer transfer = new NoteTransfer(store);
+        try {
+            if (!store.tryLock()) {
+                System.err.println("The notes file is in use by another process; close the Note Taker first");
+                return;
+            }
+            store.load();
+            long start = System.nanoTime();
+            int count;
+            if (args[0].equals("import")) {
+                count = Files.isDirectory(target) ? transfer.importMarkdown(target) : transfer.importJsonLines(target);
+                store.save(); // Once for the whole import
+            } else {
+                count = target.toString().endsWith(".jsonl") ? transfer.exportJsonLines(target) : transfer.exportMarkdown(target);
+            }
+            System.out.printf("%sed %,d notes in %d ms%n", args[0].equals("import") ? "Import" : "Export",
+                    count, (System.nanoTime() - start) / 1_000_000);
+        } catch (IOException | ClassNotFoundException e) {
+            Logger.getLogger(NoteTransfer.class.getName()).log(Level.SEVERE, "Transfer failed: ", e);
+            System.err.println("Transfer failed: " + e.getMessage());
+        }
+    }
+
+    // Writes one JSON object per line
+    public int exportJsonLines(Path file) throws IOException {
+        int count = 0;
+        try (BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            for (Note note : store.snapshot().getNotes()) {
+                writer.write(toJson(note));
+                writer.newLine();
+                count++;
+            }
+        }
+        return count;
+    }
+
+    // Writes one <id>.md file per note: a front matter block with the metadata, then the body
+    public int exportMarkdown(Path directory) throws IOException {
+        Files.createDirectories(directory);
+        int count = 0;
+        for (Note note : store.snapshot().getNotes()) {
+            if (!ID_PATTERN.matcher(note.getId()).matches()) {
+                throw new IOException("Note id cannot be used as a file name: " + note.getId());
+            }
+            try (BufferedWriter writer = Files.newBufferedWriter(directory.resolve(note.getId() + ".md"), StandardCharsets.UTF_8)) {
+                writer.write(toMarkdown(note));
+            }
+            count++;
+        }
+        return count;
+    }
+
+    public int importJsonLines(Path file) throws IOException {
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            BatchImporter<String> importer = new BatchImporter<>(NoteTransfer::parseJson);
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (!line.isBlank()) {
+                    importer.add(line);
+                }
+            }
+            return importer.finish();
+        }
+    }
+
+    public int importMarkdown(Path directory) throws IOException {
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*.md")) {
+            BatchImporter<Path> importer = new BatchImporter<>(path -> {
+                try {
+                    return parseMarkdown(new String(Files.readAllBytes(path), StandardCharsets.UTF_8));
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+            for (Path path : files) {
+                importer.add(path);
+            }
+            return importer.finish();
+        }
+    }
+
+    // Collects raw items into batches, parses each batch in parallel and applies it to the store in input order.
+    // At most two batches are held at once: the one being read and the one being parsed.
+    private final class BatchImporter<T> {
+        private final Function<T, Note> parser;
+        private List<T> batch = new ArrayList<>(BATCH_SIZE);
+        private CompletableFuture<Integer> inFlight = CompletableFuture.completedFuture(0);
+        private long itemsRead;
+
+        BatchImporter(Function<T, Note> parser) {
+            this.parser = parser;
+        }
+
+        void add(T item) throws IOException {
+            batch.add(item);
+            itemsRead++;
+            if (batch.size() == BATCH_SIZE) {
+                submit();
+            }
+        }
+
+        int finish() throws IOException {
+            submit();
+            return await(inFlight);
+        }
+
+        private void submit() throws IOException {
+            if (batch.isEmpty()) {
+                return;
+            }
+            List<T> items = batch;
+            long firstItem = itemsRead - items.size() + 1;
+            batch = new ArrayList<>(BATCH_SIZE);
+            CompletableFuture<List<Note>> parsed = CompletableFuture.supplyAsync(() -> parseBatch(items, firstItem));
+            CompletableFuture<Integer> previous = inFlight;
+            inFlight = previous.thenCombine(parsed, (applied, notes) -> applied + store.importAll(notes));
+            await(previous); // Bounds memory and surfaces errors before reading further
+        }
+
+        private List<Note> parseBatch(List<T> items, long firstItem) {
+            try {
+                return items.parallelStream().map(this::parse).collect(Collectors.toList());
+            } catch (IllegalArgumentException e) {
+                // Parallel streams lose the position, so find the first bad item again for the message
+                for (int i = 0; i < items.size(); i++) {
+                    try {
+                        parse(items.get(i));
+                    } catch (IllegalArgumentException bad) {
+                        throw new IllegalArgumentException("Item " + (firstItem + i) + ": " + bad.getMessage(), bad);
+                    }
+                }
+                throw e;
+            }
+        }
+
+        private Note parse(T item) {
+            Note note = parser.apply(item);
+            if (!store.acceptsStamp(note.getModified())) {
+                throw new IllegalArgumentException("Note " + note.getId() + " is stamped more than "
+                        + HybridLogicalClock.MAX_DRIFT_MILLIS + " ms ahead of the local clock");
+            }
+            return note;
+        }
+
+        private int await(CompletableFuture<Integer> future) throws IOException {
+            try {
+                return future.join();
+            } catch (CompletionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof UncheckedIOException) {
+                    throw ((UncheckedIOException) cause).getCause();
+                }
+                throw new IOException("Import failed: " + cause.getMessage(), cause);
+            }
+        }
+    }
+
+    static String toJson(Note note) {
+        StringBuilder sb = new StringBuilder(note.getContent().length() + 256);
+        sb.append("{\"id\":");
+        appendJsonString(sb, note.getId());
+        sb.append(",\"title\":");
+        appendJsonString(sb, note.getTitle());
+        sb.append(",\"category\":");
+        appendJsonString(sb, note.getCategory());
+        sb.append(",\"created\":").append(note.getCreationMillis());
+        sb.append(",\"version\":").append(note.getVersion());
+        sb.append(",\"modified\":").append(note.getModified());
+        sb.append(",\"origin\":");
+        appendJsonString(sb, note.getOrigin());
+        sb.append(",\"tags\":");
+        appendJsonArray(sb, note.getTags());
+        sb.append(",\"content\":");
+        appendJsonString(sb, note.getContent());
+        return sb.append('}').toString();
+    }
+
+    static Note parseJson(String line) {
+        return fromFields(new JsonReader(line).readObject());
+    }
+
+    static String toMarkdown(Note note) {
+        StringBuilder sb = new StringBuilder(note.getContent().length() + 256);
+        // Values are JSON-quoted, which is also valid YAML, so titles with colons or quotes survive
+        sb.append("---\n");
+        sb.append("id: ");
+        appendJsonString(sb, note.getId());
+        sb.append("\ntitle: ");
+        appendJsonString(sb, note.getTitle());
+        sb.append("\ncategory: ");
+        appendJsonString(sb, note.getCategory());
+        sb.append("\ncreated: ").append(Instant.ofEpochMilli(note.getCreationMillis()));
+        sb.append("\nversion: ").append(note.getVersion());
+        sb.append("\nmodified: ").append(note.getModified());
+        sb.append("\norigin: ");
+        appendJsonString(sb, note.getOrigin());
+        sb.append("\ntags: ");
+        appendJsonArray(sb, note.getTags());
+        sb.append("\n---\n");
+        return sb.append(note.getContent()).toString();
+    }
+
+    static Note parseMarkdown(String text) {
+        text = text.replace("\r\n", "\n"); // Files edited on Windows
+        if (!text.startsWith("---\n")) {
+            throw new IllegalArgumentException("Missing front matter");
+        }
+        int end = text.indexOf("\n---\n", 3); // 3 when the block is empty, sharing the opening newline
+        if (end < 0) {
+            throw new IllegalArgumentException("Unterminated front matter");
+        }
+        Map<String, Object> fields = new HashMap<>();
+        for (String line : end == 3 ? new String[0] : text.substring(4, end).split("\n")) {
+            int colon = line.indexOf(':');
+            if (colon < 0) {
+                continue;
+            }
+            String key = line.substring(0, colon).trim();
+            String value = line.substring(colon + 1).trim();
+            if (key.equals("created")) {
+                try {
+                    fields.put(key, Instant.parse(value).toEpochMilli());
+                } catch (DateTimeParseException e) {
+                    throw new IllegalArgumentException("Field created must be an ISO-8601 instant: " + value, e);
+                }
+            } else if (!value.isEmpty()) {
+                fields.put(key, new JsonReader(value).readValue());
+            }
+        }
+        fields.put("content", text.substring(end + 5));
+        return fromFields(fields);
+    }
+
+    static Note fromFields(Map<String, Object> fields) {
+        Object title = fields.get("title");
+        Object content = fields.get("content");
+        if (!(title instanceof String) || !(content instanceof String)) {
+            throw new IllegalArgumentException("Note needs a title and content");
+        }
+        Object created = fields.get("created");
+        Object version = fields.get("version");
+        Object modified = fields.get("modified");
+        String id = stringField(fields, "id");
+        if (id != null && !ID_PATTERN.matcher(id).matches()) {
+            throw new IllegalArgumentException("Invalid note id: " + id);
+        }
+        Note note = new Note(id, (String) title, (String) content, stringField(fields, "category"),
+                tagList(fields),
+                created instanceof Number ? ((Number) created).longValue() : System.currentTimeMillis(),
+                version instanceof Number ? ((Number) version).longValue() : 0L);
+        // Keep the sync stamp so exported notes merge correctly with other instances; 0 means unstamped,
+        // and NoteStore.importAll gives such notes a local stamp
+        note.stamp(modified instanceof Number ? ((Number) modified).longValue() : 0L, stringField(fields, "origin"));
+        return note;
+    }
+
+    private static List<String> tagList(Map<String, Object> fields) {
+        Object value = fields.get("tags");
+        if (value == null) {
+            return null;
+        }
+        if (!(value instanceof List)) {
+            throw new IllegalArgumentException("Field tags must be an array of strings");
+        }
+        List<String> tags = new ArrayList<>();
+        for (Object tag : (List<?>) value) {
+            if (!(tag instanceof String)) {
+                throw new IllegalArgumentException("Field tags must be an array of strings");
+            }
+            tags.add((String) tag);
+        }
+        return tags;
+    }
+
+    private static String stringField(Map<String, Object> fields, String name) {
+        Object value = fields.get(name);
+        if (value != null && !(value instanceof String)) {
+            throw new IllegalArgumentException("Field " + name + " must be a string");
+        }
+        return (String) value;
+    }
+
+    private static void appendJsonArray(StringBuilder sb, List<String> values) {
+        sb.append('[');
+        for (int i = 0; i < values.size(); i++) {
+            if (i > 0) {
+                sb.append(',');
+            }
+            appendJsonString(sb, values.get(i));
+        }
+        sb.append(']');
+    }
+
+    static void appendJsonString(StringBuilder sb, String value) {
+        if (value == null) {
+            sb.append("null");
+            return;
+        }
+        sb.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"': sb.append("\\\""); break;
+                case '\\': sb.append("\\\\"); break;
+                case '\n': sb.append("\\n"); break;
+                case '\r': sb.append("\\r"); break;
+                case '\t': sb.append("\\t"); break;
+                default:
+                    if (c < 0x20) {
+                        sb.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        sb.append(c);
+                    }
+            }
+        }
+        sb.append('"');
+    }
+
+    // Minimal JSON reader for the flat objects written above: strings, numbers, booleans, null and arrays
+    static final class JsonReader {
+        private final String text;
+        private int pos;
+
+        JsonReader(String text) {
+            this.text = text;
+        }
+
+        Map<String, Object> readObject() {
+            Map<String, Object> fields = new HashMap<>();
+            expect('{');
+            skipWhitespace();
+            if (peek() == '}') {
+                pos++;
+                return fields;
+            }
+            do {
+                skipWhitespace();
+                String key = readString();
+                skipWhitespace();
+                expect(':');
+                fields.put(key, readValue());
+                skipWhitespace();
+            } while (consume(','));
+            expect('}');
+            return fields;
+        }
+
+        Object readValue() {
+            skipWhitespace();
+            char c = peek();
+            if (c == '"') {
+                return readString();
+            }
+            if (c == '[') {
+                pos++;
+                List<Object> values = new ArrayList<>();
+                skipWhitespace();
+                if (peek() == ']') {
+                    pos++;
+                    return values;
+                }
+                do {
+                    values.add(readValue());
+                    skipWhitespace();
+                } while (consume(','));
+                expect(']');
+                return values;
+            }
+            if (c == '{') {
+                return readObject();
+            }
+            if (text.startsWith("null", pos)) {
+                pos += 4;
+                return null;
+            }
+            if (text.startsWith("true", pos)) {
+                pos += 4;
+                return Boolean.TRUE;
+            }
+            if (text.startsWith("false", pos)) {
+                pos += 5;
+                return Boolean.FALSE;
+            }
+            int start = pos;
+            while (pos < text.length() && "+-0123456789.eE".indexOf(text.charAt(pos)) >= 0) {
+                pos++;
+            }
+            if (start == pos) {
+                throw error("Unexpected character '" + c + "'");
+            }
+            String number = text.substring(start, pos);
+            try {
+                return number.contains(".") || number.contains("e") || number.contains("E")
+                        ? (Object) Double.parseDouble(number) : (Object) Long.parseLong(number);
+            } catch (NumberFormatException e) {
+                throw error("Bad number " + number);
+            }
+        }
+
+        private String readString() {
+            expect('"');
+            StringBuilder sb = null;
+            int start = pos;
+            while (true) {
+                if (pos >= text.length()) {
+                    throw error("Unterminated string");
+                }
+                char c = text.charAt(pos++);
+                if (c == '"') {
+                    return sb == null ? text.substring(start, pos - 1) : sb.toString();
+                }
+                if (c != '\\') {
+                    if (sb != null) {
+                        sb.append(c);
+                    }
+                    continue;
+                }
+                if (sb == null) {
+                    sb = new StringBuilder(text.substring(start, pos - 1));
+                }
+                if (pos >= text.length()) {
+                    throw error("Unterminated escape");
+                }
+                char escaped = text.charAt(pos++);
+                switch (escaped) {
+                    case 'n': sb.append('\n'); break;
+                    case 'r': sb.append('\r'); break;
+                    case 't': sb.append('\t'); break;
+                    case 'b': sb.append('\b'); break;
+                    case 'f': sb.append('\f'); break;
+                    case 'u':
+                        if (pos + 4 > text.length()) {
+                            throw error("Bad unicode escape");
+                        }
+                        sb.append((char) Integer.parseInt(text.substring(pos, pos + 4), 16));
+                        pos += 4;
+                        break;
+                    default: sb.append(escaped); // \" \\ \/
+                }
+            }
+        }
+
+        private void skipWhitespace() {
+            while (pos < text.length() && Character.isWhitespace(text.charAt(pos))) {
+                pos++;
+            }
+        }
+
+        private char peek() {
+            if (pos >= text.length()) {
+                throw error("Unexpected end of input");
+            }
+            return text.charAt(pos);
+        }
+
+        private boolean consume(char c) {
+            if (pos < text.length() && text.charAt(pos) == c) {
+                pos++;
+                return true;
+            }
+            return false;
+        }
+
+        private void expect(char c) {
+            skipWhitespace();
+            if (!consume(c)) {
+                throw error("Expected '" + c + "'");
+            }
+        }
+
+        private IllegalArgumentException error(String message) {
+            return new IllegalArgumentException(message + " at column " + (pos + 1));
+        }
+    }
+}